@@ -0,0 +1,203 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.explorer.ui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.vcml.session.Module;
+import org.vcml.session.SessionException;
+
+/**
+ * Disassembly cache of a single processor that survives simulation steps.
+ * Entries are keyed by address and the raw instruction word found there when
+ * they were disassembled. Before a range is served, its instruction words are
+ * read back with one read command and only rows whose word has changed, e.g.
+ * due to self-modifying code or a newly loaded program, are disassembled
+ * again. Processors without a read command fall back to disassembling every
+ * range once per generation.
+ */
+public class Disassembly {
+
+    public static final String CMD_READ = "read";
+
+    public static final String PORT_INSN = "INSN";
+
+    public static final int MAX_ENTRIES = 1 << 16;
+
+    // Instruction word of rows that could not be read back.
+    private static final long UNKNOWN = -1;
+
+    private static class CachedInsn {
+        private final long word;
+        private final long generation;
+        private final Instruction insn;
+
+        private CachedInsn(long word, long generation, Instruction insn) {
+            this.word = word;
+            this.generation = generation;
+            this.insn = insn;
+        }
+    }
+
+    private final Map<Long, CachedInsn> entries = new LinkedHashMap<Long, CachedInsn>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CachedInsn> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private volatile long generation = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private static int digit(char c) {
+        return Character.digit(c, 16);
+    }
+
+    // Parses the reply of the read command: a header line followed by lines
+    // of the form "<address>: <words...>" with blanks before the start.
+    private static long[] parseWords(String reply, int count) {
+        long[] words = new long[count];
+        int limit = count * (int) Instruction.SIZE;
+        int bytes = 0;
+        long word = 0;
+
+        String[] lines = reply.split("\n");
+        for (int i = 1; i < lines.length && bytes < limit; i++) {
+            String line = lines[i];
+            int pos = line.indexOf(':') + 1;
+            if (pos == 0)
+                continue;
+
+            for (; pos + 1 < line.length() && bytes < limit; pos++) {
+                int hi = digit(line.charAt(pos));
+                if (hi < 0)
+                    continue;
+                int lo = digit(line.charAt(++pos));
+                if (lo < 0)
+                    break;
+
+                word = (word << 8) | (hi << 4) | lo;
+                if (++bytes % Instruction.SIZE == 0) {
+                    words[bytes / (int) Instruction.SIZE - 1] = word;
+                    word = 0;
+                }
+            }
+        }
+
+        for (int i = bytes / (int) Instruction.SIZE; i < count; i++)
+            words[i] = UNKNOWN;
+        return words;
+    }
+
+    private static long[] readWords(Module processor, long address, int count) {
+        long[] words = null;
+        if (processor.findCommand(CMD_READ) != null) {
+            try {
+                String start = Long.toString(address);
+                String end = Long.toString(address + count * Instruction.SIZE);
+                words = parseWords(processor.execute(CMD_READ, PORT_INSN, start, end), count);
+            } catch (SessionException e) {
+                words = null;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Marks all entries as unverified, to be called whenever the simulation
+     * has advanced. Entries are kept and revalidated on their next use.
+     */
+    public void invalidate() {
+        generation++;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns count consecutive instructions starting at address, reusing
+     * cached rows whose instruction word is unchanged and disassembling the
+     * others with one disas command per run of changed rows.
+     */
+    public Instruction[] get(Module processor, long address, int count) {
+        long current = generation;
+        long[] words = readWords(processor, address, count);
+        Instruction[] result = new Instruction[count];
+        int missed = 0;
+
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                CachedInsn entry = entries.get(address + i * Instruction.SIZE);
+                if (entry == null)
+                    continue;
+                if ((words != null) ? (words[i] != UNKNOWN && words[i] == entry.word)
+                        : (entry.generation == current))
+                    result[i] = entry.insn;
+            }
+        }
+
+        int first = 0;
+        while (first < count) {
+            if (result[first] != null) {
+                first++;
+                continue;
+            }
+
+            int last = first;
+            while (last + 1 < count && result[last + 1] == null)
+                last++;
+
+            long start = address + first * Instruction.SIZE;
+            Instruction[] insns = Instruction.disassemble(processor, start, last - first + 1);
+            missed += insns.length;
+            synchronized (this) {
+                for (int i = 0; i < insns.length; i++) {
+                    long word = (words != null) ? words[first + i] : UNKNOWN;
+                    result[first + i] = insns[i];
+                    entries.put(start + i * Instruction.SIZE, new CachedInsn(word, current, insns[i]));
+                }
+            }
+
+            first = last + 1;
+        }
+
+        synchronized (this) {
+            hits += count - missed;
+            misses += missed;
+        }
+
+        return result;
+    }
+
+}
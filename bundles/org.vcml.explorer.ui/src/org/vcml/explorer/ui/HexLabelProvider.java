@@ -0,0 +1,176 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui;
+
+import org.eclipse.jface.viewers.OwnerDrawLabelProvider;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+
+/**
+ * Draws a whole memory row with a single text call per row, either as hex
+ * bytes in groups of 1, 2, 4 or 8 or as ASCII. Row text is assembled from
+ * precomputed glyph tables in a reused buffer; changed bytes are drawn again
+ * in red on top of blanks left for them.
+ */
+public class HexLabelProvider extends OwnerDrawLabelProvider {
+
+    public static final int MARGIN = 6;
+
+    public static final String ERROR_BYTE = "--";
+
+    private static final String[] HEX = new String[256];
+
+    private static final char[] ASCII = new char[256];
+
+    private static final String[] CHARS = new String[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            HEX[i] = String.format("%02x", i);
+            ASCII[i] = (i >= 0x20 && i < 0x7f) ? (char) i : '.';
+            CHARS[i] = String.valueOf(ASCII[i]);
+        }
+    }
+
+    private final boolean ascii;
+
+    private int grouping = 1;
+
+    private char[] buffer = new char[3 * MemoryRow.SIZE];
+
+    private int charWidth = -1;
+
+    public HexLabelProvider(boolean ascii) {
+        this.ascii = ascii;
+    }
+
+    public int getGrouping() {
+        return grouping;
+    }
+
+    public void setGrouping(int bytes) {
+        if (bytes < 1 || bytes > MemoryRow.SIZE || Integer.bitCount(bytes) != 1)
+            throw new IllegalArgumentException("invalid grouping " + bytes);
+        grouping = bytes;
+    }
+
+    /**
+     * Returns the number of characters drawn per row.
+     */
+    public int getLength() {
+        if (ascii)
+            return MemoryRow.SIZE;
+        return 2 * MemoryRow.SIZE + MemoryRow.SIZE / grouping - 1;
+    }
+
+    // Returns the character position of a byte within the row.
+    private int position(int index) {
+        if (ascii)
+            return index;
+        return 2 * index + index / grouping;
+    }
+
+    private int getCharWidth(Control control) {
+        if (charWidth < 0) {
+            GC gc = new GC(control);
+            gc.setFont(Resources.getMonoSpaceFont());
+            charWidth = gc.textExtent("0").x;
+            gc.dispose();
+        }
+
+        return charWidth;
+    }
+
+    /**
+     * Returns the column width needed to show a row.
+     */
+    public int getWidth(Control control) {
+        return getLength() * getCharWidth(control) + 2 * MARGIN;
+    }
+
+    private int fill(MemoryRow row, boolean blankChanged) {
+        byte[] bytes = row.getBytes();
+        int length = getLength();
+        for (int i = 0; i < length; i++)
+            buffer[i] = ' ';
+
+        for (int i = 0; i < MemoryRow.SIZE; i++) {
+            int pos = position(i);
+            if (blankChanged && row.isChanged(i))
+                continue;
+
+            if (ascii) {
+                buffer[pos] = ASCII[bytes[i] & 0xff];
+            } else {
+                String hex = row.isError() ? ERROR_BYTE : HEX[bytes[i] & 0xff];
+                buffer[pos] = hex.charAt(0);
+                buffer[pos + 1] = hex.charAt(1);
+            }
+        }
+
+        return length;
+    }
+
+    @Override
+    protected void measure(Event event, Object element) {
+        event.setBounds(new Rectangle(event.x, event.y, getWidth((Control) event.widget), event.height));
+    }
+
+    @Override
+    protected void paint(Event event, Object element) {
+        if (!(element instanceof MemoryRow))
+            return;
+
+        MemoryRow row = (MemoryRow) element;
+        GC gc = event.gc;
+        gc.setFont(Resources.getMonoSpaceFont());
+
+        int x = event.x + MARGIN;
+        int y = event.y + (event.height - gc.getFontMetrics().getHeight()) / 2;
+        boolean changed = false;
+        for (int i = 0; i < MemoryRow.SIZE && !changed; i++)
+            changed = row.isChanged(i);
+
+        int length = fill(row, changed);
+        gc.drawString(new String(buffer, 0, length), x, y, true);
+        if (!changed || row.isError())
+            return;
+
+        Color foreground = gc.getForeground();
+        gc.setForeground(event.display.getSystemColor(SWT.COLOR_RED));
+        int width = getCharWidth((Control) event.widget);
+        byte[] bytes = row.getBytes();
+        for (int i = 0; i < MemoryRow.SIZE; i++) {
+            if (!row.isChanged(i))
+                continue;
+
+            int b = bytes[i] & 0xff;
+            String text = ascii ? CHARS[b] : HEX[b];
+            gc.drawString(text, x + position(i) * width, y, true);
+        }
+
+        gc.setForeground(foreground);
+    }
+
+}
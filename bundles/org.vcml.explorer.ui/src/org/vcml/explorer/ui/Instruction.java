@@ -18,6 +18,7 @@
 
 package org.vcml.explorer.ui;
 
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,6 +46,13 @@ public class Instruction {
     public static final String REGEX = "\\s[>|\\s]\\s(" + REGEX_SYM + ")?\\s?(" + REGEX_VADDR + ")?\\s?(" + REGEX_PADDR
             + ")\\s(" + REGEX_INSN + ")\\s(" + REGEX_DISAS + ")?";
 
+    // Upper bound for the number of instructions fetched with one command.
+    public static final int MAX_COUNT = 256;
+
+    private static final Pattern PATTERN = Pattern.compile(REGEX);
+
+    private static final Pattern PATTERN_SYM = Pattern.compile("(" + REGEX_SYM + ")");
+
     private long physAddress;
 
     private long virtAddress;
@@ -55,15 +63,33 @@ public class Instruction {
 
     private String symbol;
 
-    private static String getDescription(long address, Module processor) {
-        try { // ToDo: do not run the command every time, better use caching!
+    // Runs a single disas command for count instructions starting at
+    // address and returns one description line per instruction.
+    private static String[] getDescriptions(long address, int count, Module processor) {
+        String[] descriptions = new String[count];
+        try {
             String arg0 = Long.toString(address);
-            String arg1 = Long.toString(address + SIZE);
-            String result = processor.execute(CMD_DISASSEMBLE, arg0, arg1);
-            return result.split("\n")[1];
+            String arg1 = Long.toString(address + count * SIZE);
+            String[] lines = processor.execute(CMD_DISASSEMBLE, arg0, arg1).split("\n");
+            for (int i = 0; i < count; i++)
+                descriptions[i] = (i + 1 < lines.length) ? lines[i + 1] : "";
         } catch (SessionException e) {
-            return e.getMessage();
+            Arrays.fill(descriptions, e.getMessage());
         }
+        return descriptions;
+    }
+
+    /**
+     * Disassembles count consecutive instructions starting at address with
+     * one round trip to the processor. The result always holds count entries;
+     * if the command fails, each of them carries the error message.
+     */
+    public static Instruction[] disassemble(Module processor, long address, int count) {
+        String[] descriptions = getDescriptions(address, count, processor);
+        Instruction[] result = new Instruction[count];
+        for (int i = 0; i < count; i++)
+            result[i] = new Instruction(address + i * SIZE, descriptions[i]);
+        return result;
     }
 
     public long getPhysicalAddress() {
@@ -75,7 +101,7 @@ public class Instruction {
     }
 
     public long getAddress() {
-        return virtAddress != 0 ? virtAddress : physAddress;
+        return virtAddress > 0 ? virtAddress : physAddress;
     }
 
     public long getInstruction() {
@@ -102,16 +128,14 @@ public class Instruction {
             virtAddress = address;
             disassembly = "<page missing>";
 
-            Pattern pattern = Pattern.compile("(" + REGEX_SYM + ")");
-            Matcher matcher = pattern.matcher(description);
+            Matcher matcher = PATTERN_SYM.matcher(description);
             if ((matcher.find()) && (matcher.groupCount() == 1))
                 symbol = matcher.group(1);
 
             return;
         }
 
-        Pattern pattern = Pattern.compile(REGEX);
-        Matcher matcher = pattern.matcher(description);
+        Matcher matcher = PATTERN.matcher(description);
 
         if (!matcher.find())
             return;
@@ -136,7 +160,7 @@ public class Instruction {
     }
 
     public Instruction(long address, Module processor) {
-        this(address, getDescription(address, processor));
+        this(address, getDescriptions(address, 1, processor)[0]);
     }
 
     @Override
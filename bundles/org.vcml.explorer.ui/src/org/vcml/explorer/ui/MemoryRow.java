@@ -18,7 +18,9 @@
 
 package org.vcml.explorer.ui;
 
-import org.vcml.session.Module;
+import org.vcml.session.MemoryCache;
+import org.vcml.session.MemoryHistory;
+import org.vcml.session.MemoryCache.Page;
 
 public class MemoryRow {
 
@@ -26,15 +28,17 @@ public class MemoryRow {
 
     private boolean error = false;
 
-    private int address;
+    private long address;
 
     private byte[] bytes = new byte[SIZE];
 
+    private boolean[] changed = new boolean[SIZE];
+
     public boolean isError() {
         return error;
     }
 
-    public int getAddress() {
+    public long getAddress() {
         return address;
     }
 
@@ -42,20 +46,26 @@ public class MemoryRow {
         return bytes;
     }
 
-    public MemoryRow(int address, Module module) {
+    public boolean isChanged(int index) {
+        return changed[index];
+    }
+
+    public MemoryRow(long address, MemoryCache cache, String module) {
         this.address = address;
 
         try {
-            String arg0 = Integer.toString(address);
-            String arg1 = Integer.toString(address + SIZE);
-            String result = module.execute("show", arg0, arg1);
-            String clean = result.substring(result.indexOf(':') + 1);
-            String[] values = clean.split(" ");
-
-            int idx = 0;
-            for (int i = 0; i < values.length; i++)
-                if (values[i].length() == 2)
-                    bytes[idx++] = (byte) Integer.parseInt(values[i], 16);
+            int i = 0;
+            while (i < SIZE) {
+                Page page = cache.getPage(module, address + i);
+                if (page == null || page.isError())
+                    throw new Exception("cannot read " + module);
+
+                int offset = (int) (address + i - page.getAddress());
+                while (i < SIZE && offset < MemoryCache.PAGE_SIZE) {
+                    bytes[i] = page.getData()[offset];
+                    changed[i++] = page.isChanged(offset++);
+                }
+            }
         } catch (Exception e) {
             for (int i = 0; i < SIZE; i++)
                 bytes[i] = (byte) 0xee;
@@ -63,9 +73,32 @@ public class MemoryRow {
         }
     }
 
+    /**
+     * Reads the row as it was at a record of the memory history. Bytes that
+     * differ from the record before are marked as changed.
+     */
+    public MemoryRow(long address, MemoryHistory history, int index, String module) {
+        this.address = address;
+
+        byte[] page = history.getPage(index, module, address);
+        byte[] previous = history.getPage(index - 1, module, address);
+        int offset = (int) Long.remainderUnsigned(address, MemoryCache.PAGE_SIZE);
+        if (page == null || offset + SIZE > page.length) {
+            for (int i = 0; i < SIZE; i++)
+                bytes[i] = (byte) 0xee;
+            error = true;
+            return;
+        }
+
+        for (int i = 0; i < SIZE; i++) {
+            bytes[i] = page[offset + i];
+            changed[i] = previous != null && previous[offset + i] != bytes[i];
+        }
+    }
+
     @Override
     public String toString() {
-        String desc = String.format("0x%08x:", address);
+        String desc = String.format("0x%016x:", address);
         for (int i = 0; i < SIZE; i++)
             desc += String.format(" %02x", bytes[i]);
         return desc;
@@ -81,7 +114,7 @@ public class MemoryRow {
             return false;
 
         for (int i = 0; i < SIZE; i++) {
-            if (row.getBytes()[i] != bytes[i])
+            if (row.getBytes()[i] != bytes[i] || row.isChanged(i) != changed[i])
                 return false;
         }
 
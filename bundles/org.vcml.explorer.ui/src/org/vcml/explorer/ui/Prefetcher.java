@@ -0,0 +1,155 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Loads table rows ahead of the viewport of a virtual table. The prefetcher
+ * is told about every scroll position, derives direction and velocity from
+ * them and requests the next pages in scroll direction on a single low
+ * priority thread, so that rows are usually resident by the time the table
+ * asks for them. A newer request supersedes one that has not started yet and
+ * tells a running one to stop at its next step, so that background loading
+ * never holds the connection for long when the table needs it.
+ */
+public class Prefetcher {
+
+    public interface Loader {
+        /**
+         * Called on the UI thread for a range of rows about to become visible.
+         * @param first         First row to load
+         * @param last          Last row to load, inclusive
+         * @param superseded    Becomes true once a newer request was made
+         * @return              Work to run in the background or <code>null</code>
+         */
+        Runnable prepare(long first, long last, BooleanSupplier superseded);
+    }
+
+    public static final int MAX_PAGES_AHEAD = 8;
+
+    // How far ahead in time to load at the current scroll velocity.
+    public static final double LOOKAHEAD = 0.5; // seconds
+
+    private final ExecutorService executor;
+
+    private final Loader loader;
+
+    private final long pageRows;
+
+    private long lastTop = -1;
+
+    private long lastTime = 0;
+
+    private double velocity = 0.0; // rows per second, smoothed
+
+    private long requestedFirst = -1;
+
+    private long requestedLast = -1;
+
+    private Future<?> pending = null;
+
+    private volatile long ticket = 0; // of the latest request
+
+    public Prefetcher(String name, long pageRows, Loader loader) {
+        this.pageRows = Math.max(1, pageRows);
+        this.loader = loader;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the smoothed scroll velocity in rows per second, negative when
+     * scrolling up.
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * Reports the current viewport, to be called from the scroll listener.
+     * @param top       First visible row
+     * @param visible   Number of visible rows
+     * @param count     Number of rows in the table
+     */
+    public void update(long top, long visible, long count) {
+        long now = System.nanoTime();
+        if (lastTop >= 0 && top != lastTop) {
+            double dt = Math.max(now - lastTime, 1000000) / 1e9;
+            velocity = 0.5 * velocity + 0.5 * ((top - lastTop) / dt);
+        }
+
+        boolean down = top > lastTop || (top == lastTop && velocity >= 0.0);
+        lastTop = top;
+        lastTime = now;
+
+        long pages = 1 + (long) Math.ceil(Math.abs(velocity) * LOOKAHEAD / pageRows);
+        long ahead = Math.min(pages, MAX_PAGES_AHEAD) * pageRows;
+
+        long first = down ? top + visible : top - ahead;
+        long last = down ? top + visible + ahead - 1 : top - 1;
+        first = Math.max(first, 0);
+        last = Math.min(last, count - 1);
+        if (first > last)
+            return;
+
+        if (first >= requestedFirst && last <= requestedLast)
+            return; // loaded or on its way
+
+        long current = ticket + 1;
+        Runnable job = loader.prepare(first, last, () -> ticket != current);
+        if (job == null)
+            return;
+
+        if (pending != null)
+            pending.cancel(false);
+        ticket = current;
+
+        requestedFirst = first;
+        requestedLast = last;
+        pending = executor.submit(job);
+    }
+
+    /**
+     * Drops a queued request, e.g. when the table content changes.
+     */
+    public void reset() {
+        if (pending != null)
+            pending.cancel(false);
+        pending = null;
+        ticket++;
+        requestedFirst = requestedLast = -1;
+        lastTop = -1;
+        velocity = 0.0;
+    }
+
+    public void dispose() {
+        reset();
+        executor.shutdownNow();
+    }
+
+}
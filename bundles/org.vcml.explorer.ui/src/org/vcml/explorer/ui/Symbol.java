@@ -18,13 +18,6 @@
 
 package org.vcml.explorer.ui;
 
-import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.vcml.session.Module;
-import org.vcml.session.SessionException;
-
 public class Symbol {
 
     public static final String CMD_LSYM = "lsym";
@@ -32,43 +25,6 @@ public class Symbol {
     // F c03c9de0 xprt_load_transport
     public static final String REGEX = "\\s([0-9a-fA-F]{16})\\s(\\w*)";
 
-    private static Symbol[] findSymbols(Module module, String prefix) {
-        ArrayList<Symbol> symbols = new ArrayList<Symbol>();
-        Pattern pattern = Pattern.compile(prefix + REGEX);
-
-        try {
-            String response = module.execute(CMD_LSYM);
-            String[] lines = response.split("\n");
-            for (String line : lines) {
-                Matcher matcher = pattern.matcher(line);
-
-                if (!matcher.find() || matcher.groupCount() != 2)
-                    continue;
-
-                long address = Long.parseLong(matcher.group(1), 16);
-                String name = matcher.group(2);
-                symbols.add(new Symbol(name, address, line.startsWith("F")));
-            }
-        } catch (SessionException e) {
-            // ignore
-        }
-
-        Symbol[] array = new Symbol[symbols.size()];
-        return symbols.toArray(array);
-    }
-
-    public static Symbol[] findSymbols(Module module) {
-        return findSymbols(module, "[F|O]");
-    }
-
-    public static Symbol[] findObjects(Module module) {
-        return findSymbols(module, "[O]");
-    }
-
-    public static Symbol[] findFunctions(Module module) {
-        return findSymbols(module, "[F]");
-    }
-
     private String name;
 
     private long address;
@@ -0,0 +1,186 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.explorer.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.vcml.session.Module;
+import org.vcml.session.SessionException;
+
+/**
+ * Index over the symbols of a processor, built from a single lsym command.
+ * Function addresses are kept sorted in a primitive array for resolving an
+ * address to the enclosing function by binary search, and all names are kept
+ * sorted (ignoring case) for exact lookup and prefix completion.
+ */
+public class SymbolTable {
+
+    public static final int MAX_PROPOSALS = 256;
+
+    // Largest offset still described relative to a function.
+    public static final long MAX_OFFSET = 1 << 16;
+
+    private static final Pattern PATTERN = Pattern.compile("^([FO])" + Symbol.REGEX);
+
+    private static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER;
+
+    private final Symbol[] functions; // sorted by address
+
+    private final long[] addresses; // of functions, ascending
+
+    private final Symbol[] symbols; // sorted by name
+
+    private final String[] names; // of symbols, same order
+
+    public static SymbolTable load(Module module) {
+        List<Symbol> found = new ArrayList<Symbol>();
+        try {
+            String response = module.execute(Symbol.CMD_LSYM);
+            for (String line : response.split("\n")) {
+                Matcher matcher = PATTERN.matcher(line);
+                if (!matcher.find())
+                    continue;
+
+                long address = Long.parseLong(matcher.group(2), 16);
+                found.add(new Symbol(matcher.group(3), address, matcher.group(1).equals("F")));
+            }
+        } catch (SessionException | NumberFormatException e) {
+            // ignore
+        }
+
+        return new SymbolTable(found.toArray(new Symbol[found.size()]));
+    }
+
+    public SymbolTable(Symbol[] all) {
+        functions = Arrays.stream(all).filter(Symbol::isFunction)
+                .sorted(Comparator.comparingLong(Symbol::getAddress)).toArray(Symbol[]::new);
+        addresses = new long[functions.length];
+        for (int i = 0; i < functions.length; i++)
+            addresses[i] = functions[i].getAddress();
+
+        symbols = all.clone();
+        Arrays.sort(symbols, (a, b) -> ORDER.compare(a.getName(), b.getName()));
+        names = new String[symbols.length];
+        for (int i = 0; i < symbols.length; i++)
+            names[i] = symbols[i].getName();
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public Symbol[] getFunctions() {
+        return functions.clone();
+    }
+
+    // Index of the first name not ordered before key.
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = names.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ORDER.compare(names[mid], key) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the symbol with exactly the given name or <code>null</code>.
+     */
+    public Symbol find(String name) {
+        for (int i = lowerBound(name); i < names.length && ORDER.compare(names[i], name) == 0; i++)
+            if (names[i].equals(name))
+                return symbols[i];
+        return null;
+    }
+
+    // Index of the first function at the highest address not above address,
+    // or -1 if there is none.
+    private int floor(long address) {
+        int index = Arrays.binarySearch(addresses, address);
+        if (index < 0)
+            index = -index - 2;
+        while (index > 0 && addresses[index - 1] == addresses[index])
+            index--;
+        return index;
+    }
+
+    /**
+     * Returns the function at or closest below address or <code>null</code>
+     * if there is none.
+     */
+    public Symbol lookup(long address) {
+        int index = floor(address);
+        return index < 0 ? null : functions[index];
+    }
+
+    /**
+     * Describes address as function name plus offset, e.g. "main+0x1c".
+     * Offsets are bounded by the start of the next function and by
+     * MAX_OFFSET, so that addresses in large gaps or past the last function
+     * are not attributed to the function before them.
+     */
+    public String describe(long address) {
+        int index = floor(address);
+        if (index < 0)
+            return null;
+
+        Symbol function = functions[index];
+        long end = function.getAddress() + MAX_OFFSET;
+        for (int next = index + 1; next < addresses.length; next++) {
+            if (addresses[next] != function.getAddress()) {
+                end = Math.min(end, addresses[next]);
+                break;
+            }
+        }
+
+        if (address >= end)
+            return null;
+
+        long offset = address - function.getAddress();
+        if (offset == 0)
+            return function.getName();
+        return function.getName() + "+0x" + Long.toHexString(offset);
+    }
+
+    /**
+     * Returns up to max distinct names starting with prefix, ignoring case,
+     * in sorted order.
+     */
+    public String[] complete(String prefix, int max) {
+        List<String> result = new ArrayList<String>();
+        String last = null;
+        for (int i = lowerBound(prefix); i < names.length && result.size() < max; i++) {
+            if (!names[i].regionMatches(true, 0, prefix, 0, prefix.length()))
+                break;
+            if (!names[i].equals(last))
+                result.add(last = names[i]);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+}
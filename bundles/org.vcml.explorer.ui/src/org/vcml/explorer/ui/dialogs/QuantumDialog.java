@@ -0,0 +1,240 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.dialogs;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.jface.dialogs.IMessageProvider;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.dialogs.TitleAreaDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Group;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.List;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Spinner;
+import org.eclipse.swt.widgets.Text;
+
+import org.vcml.explorer.ui.Resources;
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.QuantumTuner;
+import org.vcml.session.Session;
+import org.vcml.session.SessionException;
+import org.vcml.session.SimulationTime;
+
+public class QuantumDialog extends TitleAreaDialog {
+
+    private ISessionService service;
+    private Session session;
+    private double quantum;
+
+    private Text quantumText;
+    private Text lowerText;
+    private Text upperText;
+    private Spinner countSpinner;
+    private Spinner burstSpinner;
+    private Button tuneButton;
+    private List resultList;
+    private Button okButton;
+
+    private ModifyListener modifyListener = new ModifyListener() {
+        @Override
+        public void modifyText(ModifyEvent e) {
+            checkInput();
+        }
+    };
+
+    private static boolean isValid(Text text) {
+        return SimulationTime.parse(text.getText()) > 0.0;
+    }
+
+    private void checkInput() {
+        okButton.setEnabled(isValid(quantumText));
+        tuneButton.setEnabled(isValid(lowerText) && isValid(upperText)
+                && SimulationTime.parse(lowerText.getText()) <= SimulationTime.parse(upperText.getText()));
+    }
+
+    private Text createTimeField(Composite container, String label, double value) {
+        Label timeLabel = new Label(container, SWT.NONE);
+        timeLabel.setText(label);
+
+        Text text = new Text(container, SWT.BORDER);
+        text.setText(SimulationTime.format(value));
+        text.addModifyListener(modifyListener);
+        text.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+        return text;
+    }
+
+    private void tune() {
+        final double[] candidates = QuantumTuner.getCandidates(SimulationTime.parse(lowerText.getText()),
+                SimulationTime.parse(upperText.getText()), countSpinner.getSelection());
+        final long burst = burstSpinner.getSelection();
+        final QuantumTuner tuner = new QuantumTuner(session);
+
+        IRunnableWithProgress runnable = new IRunnableWithProgress() {
+            @Override
+            public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                monitor.beginTask("Measuring simulation speed", candidates.length);
+                try {
+                    for (double candidate : candidates) {
+                        if (monitor.isCanceled())
+                            break;
+                        monitor.subTask("Quantum " + SimulationTime.format(candidate));
+                        tuner.measure(candidate, burst);
+                        monitor.worked(1);
+                    }
+                } catch (SessionException e) {
+                    throw new InvocationTargetException(e);
+                } finally {
+                    try {
+                        tuner.restore();
+                    } catch (SessionException e) {
+                        // best effort, the session may be gone already
+                    }
+                    monitor.done();
+                }
+            }
+        };
+
+        try {
+            new ProgressMonitorDialog(getShell()).run(true, true, runnable);
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(getShell(), "Tuning failed", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            // cancelled, show what has been measured so far
+        }
+
+        // tuning has advanced the simulation behind the service's back
+        service.refreshSession(session);
+
+        resultList.removeAll();
+        for (QuantumTuner.Result result : tuner.getResults())
+            resultList.add(String.format("%-12s %12.6f sim/wall", SimulationTime.format(result.getQuantum()),
+                    result.getSpeed()));
+
+        QuantumTuner.Result best = tuner.getBest();
+        if (best != null) {
+            quantumText.setText(SimulationTime.format(best.getQuantum()));
+            setMessage("Fastest quantum was " + SimulationTime.format(best.getQuantum()) + ", press OK to apply it",
+                    IMessageProvider.INFORMATION);
+        }
+    }
+
+    @Override
+    protected Control createDialogArea(Composite parent) {
+        Composite area = (Composite) super.createDialogArea(parent);
+        Composite container = new Composite(area, SWT.NONE);
+        container.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+        container.setLayout(new GridLayout(2, false));
+
+        double current = session.getQuantum();
+        quantumText = createTimeField(container, "Quantum", Double.isNaN(current) ? 1e-6 : current);
+
+        Group group = new Group(container, SWT.NONE);
+        group.setText("Auto-Tune");
+        group.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
+        group.setLayout(new GridLayout(2, false));
+
+        lowerText = createTimeField(group, "Smallest quantum", 1e-6);
+        upperText = createTimeField(group, "Largest quantum", 1e-3);
+
+        Label countLabel = new Label(group, SWT.NONE);
+        countLabel.setText("Values to try");
+        countSpinner = new Spinner(group, SWT.BORDER);
+        countSpinner.setMinimum(2);
+        countSpinner.setMaximum(20);
+        countSpinner.setSelection(4);
+        countSpinner.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+
+        Label burstLabel = new Label(group, SWT.NONE);
+        burstLabel.setText("Run each for (ms)");
+        burstSpinner = new Spinner(group, SWT.BORDER);
+        burstSpinner.setMinimum(100);
+        burstSpinner.setMaximum(60000);
+        burstSpinner.setIncrement(100);
+        burstSpinner.setSelection((int) QuantumTuner.DEFAULT_BURST);
+        burstSpinner.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+
+        new Label(group, SWT.NONE); // just to fill the grid layout
+
+        tuneButton = new Button(group, SWT.PUSH);
+        tuneButton.setText("Tune");
+        tuneButton.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false));
+        tuneButton.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                tune();
+            }
+        });
+
+        resultList = new List(group, SWT.BORDER | SWT.V_SCROLL);
+        resultList.setFont(Resources.getMonoSpaceFont());
+        GridData listData = new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1);
+        listData.heightHint = 100;
+        resultList.setLayoutData(listData);
+
+        return area;
+    }
+
+    @Override
+    protected void createButtonsForButtonBar(Composite parent) {
+        okButton = createButton(parent, IDialogConstants.OK_ID, IDialogConstants.OK_LABEL, true);
+        createButton(parent, IDialogConstants.CANCEL_ID, IDialogConstants.CANCEL_LABEL, false);
+        checkInput();
+    }
+
+    public QuantumDialog(Shell parentShell, ISessionService service, Session session) {
+        super(parentShell);
+        this.service = service;
+        this.session = session;
+    }
+
+    @Override
+    public void create() {
+        super.create();
+        setTitle("Global quantum of " + session.getName());
+        setMessage("Larger quanta simulate faster but less accurately", IMessageProvider.INFORMATION);
+        setTitleImage(Resources.getImage("icons/new2x.png"));
+    }
+
+    public double getQuantum() {
+        return quantum;
+    }
+
+    @Override
+    protected void okPressed() {
+        quantum = SimulationTime.parse(quantumText.getText());
+        super.okPressed();
+    }
+
+}
@@ -0,0 +1,174 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.dialogs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.jface.dialogs.IMessageProvider;
+import org.eclipse.jface.dialogs.TitleAreaDialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+
+import org.vcml.explorer.ui.Resources;
+import org.vcml.session.Session;
+import org.vcml.session.SessionException;
+import org.vcml.session.SessionSnapshot;
+
+public class SnapshotDialog extends TitleAreaDialog {
+
+    private Session session;
+    private String file;
+    private SessionSnapshot.Range[] ranges;
+
+    private Text fileText;
+    private Text rangesText;
+    private Button okButton;
+
+    private ModifyListener modifyListener = new ModifyListener() {
+        @Override
+        public void modifyText(ModifyEvent e) {
+            checkInput();
+        }
+    };
+
+    // One range per line, empty lines are skipped.
+    private SessionSnapshot.Range[] parseRanges() throws SessionException {
+        List<SessionSnapshot.Range> list = new ArrayList<SessionSnapshot.Range>();
+        for (String line : rangesText.getText().split("\\R"))
+            if (!line.trim().isEmpty())
+                list.add(SessionSnapshot.Range.parse(line));
+        return list.toArray(new SessionSnapshot.Range[list.size()]);
+    }
+
+    private void checkInput() {
+        try {
+            parseRanges();
+            setErrorMessage(null);
+            okButton.setEnabled(!fileText.getText().trim().isEmpty());
+        } catch (SessionException e) {
+            setErrorMessage(e.getMessage());
+            okButton.setEnabled(false);
+        }
+    }
+
+    private void browse() {
+        FileDialog dialog = new FileDialog(getShell(), SWT.SAVE);
+        dialog.setText("Save Session Snapshot");
+        dialog.setFilterExtensions(new String[] { "*." + SessionSnapshot.EXTENSION, "*" });
+        dialog.setFileName(session.getName() + "." + SessionSnapshot.EXTENSION);
+        dialog.setOverwrite(true);
+        String selected = dialog.open();
+        if (selected != null)
+            fileText.setText(selected);
+    }
+
+    @Override
+    protected Control createDialogArea(Composite parent) {
+        Composite area = (Composite) super.createDialogArea(parent);
+        Composite container = new Composite(area, SWT.NONE);
+        container.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+        container.setLayout(new GridLayout(3, false));
+
+        Label fileLabel = new Label(container, SWT.NONE);
+        fileLabel.setText("File");
+
+        fileText = new Text(container, SWT.BORDER);
+        fileText.addModifyListener(modifyListener);
+        fileText.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+
+        Button browseButton = new Button(container, SWT.PUSH);
+        browseButton.setText("Browse...");
+        browseButton.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                browse();
+            }
+        });
+
+        Label rangesLabel = new Label(container, SWT.NONE);
+        rangesLabel.setText("Memory");
+        rangesLabel.setLayoutData(new GridData(SWT.LEFT, SWT.TOP, false, false));
+
+        rangesText = new Text(container, SWT.BORDER | SWT.MULTI | SWT.V_SCROLL);
+        rangesText.setFont(Resources.getMonoSpaceFont());
+        rangesText.setToolTipText("One range per line, e.g. system.ram:0x0+0x100000");
+        rangesText.addModifyListener(modifyListener);
+        GridData rangesData = new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1);
+        rangesData.heightHint = 80;
+        rangesText.setLayoutData(rangesData);
+
+        return area;
+    }
+
+    @Override
+    protected void createButtonsForButtonBar(Composite parent) {
+        okButton = createButton(parent, IDialogConstants.OK_ID, IDialogConstants.OK_LABEL, true);
+        createButton(parent, IDialogConstants.CANCEL_ID, IDialogConstants.CANCEL_LABEL, false);
+        checkInput();
+    }
+
+    public SnapshotDialog(Shell parentShell, Session session) {
+        super(parentShell);
+        this.session = session;
+    }
+
+    @Override
+    public void create() {
+        super.create();
+        setTitle("Snapshot of " + session.getName());
+        setMessage("Saves hierarchy, attributes, symbols and the memory ranges given below, one per line as "
+                + "module:start+length", IMessageProvider.INFORMATION);
+        setTitleImage(Resources.getImage("icons/new2x.png"));
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public SessionSnapshot.Range[] getRanges() {
+        return ranges;
+    }
+
+    @Override
+    protected void okPressed() {
+        try {
+            file = fileText.getText().trim();
+            ranges = parseRanges();
+            super.okPressed();
+        } catch (SessionException e) {
+            setErrorMessage(e.getMessage());
+        }
+    }
+
+}
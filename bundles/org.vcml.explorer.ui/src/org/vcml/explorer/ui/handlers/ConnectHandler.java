@@ -33,7 +33,7 @@ public class ConnectHandler {
     @CanExecute
     public boolean canExecute(ISessionService service) {
         Session current = service.getSession();
-        if ((current == null) || current.isConnected())
+        if ((current == null) || service.isBusy(current) || current.isConnected())
             return false;
         return true;
     }
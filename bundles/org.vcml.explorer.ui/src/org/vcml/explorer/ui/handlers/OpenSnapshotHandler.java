@@ -0,0 +1,51 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.handlers;
+
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.e4.core.commands.ECommandService;
+import org.eclipse.e4.core.commands.EHandlerService;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Shell;
+
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Session;
+import org.vcml.session.SessionSnapshot;
+
+public class OpenSnapshotHandler {
+    @Execute
+    public void execute(Shell shell, ISessionService service, ECommandService commandService,
+            EHandlerService handlerService) {
+        FileDialog dialog = new FileDialog(shell, SWT.OPEN);
+        dialog.setText("Open Session Snapshot");
+        dialog.setFilterExtensions(new String[] { "*." + SessionSnapshot.EXTENSION, "*" });
+        String file = dialog.open();
+        if (file == null)
+            return;
+
+        Session session = service.openSnapshot(file);
+        if (session != null && session.isConnected()) {
+            ParameterizedCommand inspect = commandService.createCommand("org.vcml.explorer.ui.command.inspect", null);
+            handlerService.executeHandler(inspect);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.handlers;
+
+import org.eclipse.e4.core.di.annotations.CanExecute;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.widgets.Shell;
+
+import org.vcml.explorer.ui.dialogs.QuantumDialog;
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Session;
+
+public class QuantumHandler {
+    @CanExecute
+    public boolean canExecute(ISessionService service) {
+        Session current = service.getSession();
+        if ((current == null) || service.isBusy(current) || !current.isConnected() || current.isOffline())
+            return false;
+        return !current.isRunning();
+    }
+
+    @Execute
+    public void execute(Shell shell, ISessionService service) {
+        Session session = service.getSession();
+        QuantumDialog dialog = new QuantumDialog(shell, service, session);
+        if (dialog.open() == Window.OK)
+            service.setQuantum(session, dialog.getQuantum());
+    }
+}
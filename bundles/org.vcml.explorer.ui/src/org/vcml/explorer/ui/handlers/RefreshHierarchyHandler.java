@@ -27,7 +27,8 @@ import org.vcml.session.SessionException;
 public class RefreshHierarchyHandler {
     @CanExecute
     public boolean canExecute(ISessionService service) {
-        return service.getSession() != null;
+        Session current = service.getSession();
+        return (current != null) && !service.isBusy(current);
     }
 
     @Execute
@@ -0,0 +1,76 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.handlers;
+
+import java.text.ParseException;
+
+import org.eclipse.e4.core.di.annotations.CanExecute;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.eclipse.jface.dialogs.IInputValidator;
+import org.eclipse.jface.dialogs.InputDialog;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.widgets.Shell;
+
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Condition;
+import org.vcml.session.ConditionResult;
+import org.vcml.session.Session;
+
+public class RunUntilHandler {
+
+    private static String lastInput = "";
+
+    private IInputValidator validator = new IInputValidator() {
+        @Override
+        public String isValid(String input) {
+            try {
+                Condition.compile(input);
+                return null;
+            } catch (ParseException e) {
+                return e.getMessage();
+            }
+        }
+    };
+
+    @CanExecute
+    public boolean canExecute(ISessionService service) {
+        Session current = service.getSession();
+        if ((current == null) || service.isBusy(current) || !current.isConnected() || current.isOffline())
+            return false;
+        return !current.isRunning();
+    }
+
+    @Execute
+    public void execute(Shell shell, ISessionService service) throws ParseException {
+        Session session = service.getSession();
+        InputDialog dialog = new InputDialog(shell, "Run Until",
+                "Step until condition holds (e.g. system.cpu.irq_count > 5 && system.uart.lsr != 0):", lastInput,
+                validator);
+        if (dialog.open() != Window.OK)
+            return;
+
+        lastInput = dialog.getValue();
+        Condition condition = Condition.compile(lastInput);
+        ConditionResult result = service.runSimulationUntil(session, condition, Session.DEFAULT_MAX_STEPS);
+        if (result != null)
+            MessageDialog.openInformation(shell, "Run Until", result.toString());
+    }
+}
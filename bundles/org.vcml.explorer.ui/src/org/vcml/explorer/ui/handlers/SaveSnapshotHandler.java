@@ -0,0 +1,80 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.handlers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Paths;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.e4.core.di.annotations.CanExecute;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.widgets.Shell;
+
+import org.vcml.explorer.ui.dialogs.SnapshotDialog;
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Session;
+import org.vcml.session.SessionException;
+import org.vcml.session.SessionSnapshot;
+
+public class SaveSnapshotHandler {
+    @CanExecute
+    public boolean canExecute(ISessionService service) {
+        Session current = service.getSession();
+        if ((current == null) || service.isBusy(current) || !current.isConnected())
+            return false;
+        return !current.isRunning();
+    }
+
+    @Execute
+    public void execute(Shell shell, ISessionService service) {
+        Session session = service.getSession();
+        SnapshotDialog dialog = new SnapshotDialog(shell, session);
+        if (dialog.open() != Window.OK)
+            return;
+
+        final String file = dialog.getFile();
+        final SessionSnapshot.Range[] ranges = dialog.getRanges();
+        IRunnableWithProgress runnable = new IRunnableWithProgress() {
+            @Override
+            public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                monitor.beginTask("Capturing " + session.getName(), IProgressMonitor.UNKNOWN);
+                try {
+                    session.saveSnapshot(Paths.get(file), ranges);
+                } catch (SessionException e) {
+                    throw new InvocationTargetException(e);
+                } finally {
+                    monitor.done();
+                }
+            }
+        };
+
+        try {
+            new ProgressMonitorDialog(shell).run(true, false, runnable);
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(shell, "Snapshot failed", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            // not cancelable
+        }
+    }
+}
@@ -30,7 +30,7 @@ public class StepHandler {
     @CanExecute
     public boolean canExecute(ISessionService service) {
         Session current = service.getSession();
-        if ((current == null) || !current.isConnected())
+        if ((current == null) || service.isBusy(current) || !current.isConnected() || current.isOffline())
             return false;
         return !current.isRunning();
     }
@@ -0,0 +1,74 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.handlers;
+
+import org.eclipse.e4.core.di.annotations.CanExecute;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.eclipse.jface.dialogs.IInputValidator;
+import org.eclipse.jface.dialogs.InputDialog;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.widgets.Shell;
+
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Session;
+import org.vcml.session.SimulationTime;
+
+public class StepMultipleHandler {
+
+    private static String lastInput = "100";
+
+    private static boolean isCount(String input) {
+        return input.trim().matches("[0-9]+");
+    }
+
+    private IInputValidator validator = new IInputValidator() {
+        @Override
+        public String isValid(String input) {
+            if (isCount(input) && Integer.parseInt(input.trim()) > 0)
+                return null;
+            if (!isCount(input) && SimulationTime.parse(input) > 0.0)
+                return null;
+            return "Enter a number of steps or a duration such as 10ms";
+        }
+    };
+
+    @CanExecute
+    public boolean canExecute(ISessionService service) {
+        Session current = service.getSession();
+        if ((current == null) || service.isBusy(current) || !current.isConnected() || current.isOffline())
+            return false;
+        return !current.isRunning();
+    }
+
+    @Execute
+    public void execute(Shell shell, ISessionService service) {
+        Session session = service.getSession();
+        InputDialog dialog = new InputDialog(shell, "Step Simulation",
+                "Number of steps or simulation time to run (e.g. 1000 or 10ms):", lastInput, validator);
+        if (dialog.open() != Window.OK)
+            return;
+
+        lastInput = dialog.getValue().trim();
+        if (isCount(lastInput))
+            service.stepSimulation(session, Integer.parseInt(lastInput));
+        else
+            service.runSimulationFor(session, SimulationTime.parse(lastInput));
+    }
+}
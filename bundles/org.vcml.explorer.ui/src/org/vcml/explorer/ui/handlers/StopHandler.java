@@ -30,7 +30,7 @@ public class StopHandler {
     @CanExecute
     public boolean canExecute(ISessionService service) {
         Session current = service.getSession();
-        if ((current == null) || !current.isConnected())
+        if ((current == null) || service.isBusy(current) || !current.isConnected())
             return false;
         return current.isRunning();
     }
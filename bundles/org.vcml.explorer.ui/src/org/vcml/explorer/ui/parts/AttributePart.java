@@ -30,10 +30,14 @@ import org.eclipse.e4.ui.workbench.modeling.ESelectionService;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.KeyEvent;
 import org.eclipse.swt.events.KeyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Menu;
+import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.jface.layout.TableColumnLayout;
@@ -158,6 +162,27 @@ public class AttributePart {
         }
     };
 
+    private Menu buildContextMenu(Table table) {
+        Menu menu = new Menu(table);
+
+        MenuItem watchItem = new MenuItem(menu, SWT.NONE);
+        watchItem.setText("Watch Attribute");
+        watchItem.setImage(Resources.getImage("icons/inspect.gif"));
+        watchItem.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                Session session = sessionService.getSession();
+                for (Object element : viewer.getStructuredSelection().toArray()) {
+                    Attribute attr = (Attribute) element;
+                    if (attr.isEditable())
+                        sessionService.watchAttribute(session, attr.getName());
+                }
+            }
+        });
+
+        return menu;
+    }
+
     @PostConstruct
     public void createComposite(Composite parent) {
         parent.setLayout(new GridLayout());
@@ -218,6 +243,7 @@ public class AttributePart {
         Table table = viewer.getTable();
         table.setHeaderVisible(true);
         table.setLinesVisible(true);
+        table.setMenu(buildContextMenu(table));
 
         ColumnViewerToolTipSupport.enableFor(viewer);
     }
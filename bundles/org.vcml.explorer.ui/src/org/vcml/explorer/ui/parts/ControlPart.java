@@ -0,0 +1,318 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.parts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.eclipse.e4.core.di.annotations.Optional;
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.ui.di.Focus;
+import org.eclipse.e4.ui.di.UIEventTopic;
+import org.eclipse.e4.ui.workbench.UIEvents;
+import org.eclipse.jface.dialogs.IInputValidator;
+import org.eclipse.jface.dialogs.InputDialog;
+import org.eclipse.jface.layout.TableColumnLayout;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.ColumnWeightData;
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.layout.RowLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Spinner;
+import org.eclipse.swt.widgets.Table;
+
+import org.vcml.explorer.ui.Resources;
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Session;
+import org.vcml.session.SessionController;
+import org.vcml.session.SessionStatus;
+
+public class ControlPart {
+
+    @Inject
+    private ISessionService sessionService;
+
+    @Inject
+    private IEventBroker broker;
+
+    // Shared with the service, which keeps other actions off busy sessions.
+    private SessionController controller;
+
+    private TableViewer viewer;
+
+    private List<Button> buttons = new ArrayList<Button>();
+
+    private Spinner stepSpinner;
+
+    private SessionController.Listener controllerListener = new SessionController.Listener() {
+        @Override
+        public void operationDone(SessionStatus status) {
+            viewer.getControl().getDisplay().asyncExec(() -> {
+                if (viewer.getControl().isDisposed())
+                    return;
+                viewer.update(status.getSession(), null);
+                updateButtons();
+            });
+        }
+    };
+
+    private IStructuredContentProvider contentProvider = new IStructuredContentProvider() {
+        @Override
+        public Object[] getElements(Object inputElement) {
+            return sessionService.getSessions().toArray();
+        }
+    };
+
+    private abstract class StatusColumn extends ColumnLabelProvider {
+        abstract String getText(Session session, SessionStatus status);
+
+        @Override
+        public String getText(Object element) {
+            Session session = (Session) element;
+            return getText(session, controller.getStatus(session));
+        }
+
+        @Override
+        public Font getFont(Object element) {
+            return Resources.getMonoSpaceFont();
+        }
+
+        @Override
+        public Color getForeground(Object element) {
+            SessionStatus status = controller.getStatus((Session) element);
+            if (status != null && status.hasFailed())
+                return Resources.getColor(SWT.COLOR_RED);
+            return null;
+        }
+    }
+
+    private void addColumn(TableColumnLayout layout, String title, int weight, ColumnLabelProvider provider) {
+        TableViewerColumn column = new TableViewerColumn(viewer, SWT.NONE);
+        column.getColumn().setText(title);
+        column.setLabelProvider(provider);
+        layout.setColumnData(column.getColumn(), new ColumnWeightData(weight, 50, true));
+    }
+
+    // Operates on the selected sessions, or on all of them if none are.
+    private List<Session> getTargets() {
+        List<Session> targets = new ArrayList<Session>();
+        for (Object element : viewer.getStructuredSelection().toArray())
+            targets.add((Session) element);
+        if (targets.isEmpty())
+            targets.addAll(sessionService.getSessions());
+        return targets;
+    }
+
+    private void updateButtons() {
+        boolean idle = controller.getPending() == 0;
+        for (Button button : buttons)
+            button.setEnabled(idle);
+    }
+
+    private void submitted() {
+        updateButtons();
+        viewer.refresh();
+        broker.post(UIEvents.REQUEST_ENABLEMENT_UPDATE_TOPIC, UIEvents.ALL_ELEMENT_ID);
+    }
+
+    private String ask(String title, String message, IInputValidator validator) {
+        InputDialog dialog = new InputDialog(viewer.getControl().getShell(), title, message, "", validator);
+        return dialog.open() == Window.OK ? dialog.getValue().trim() : null;
+    }
+
+    private void broadcastAttribute() {
+        String input = ask("Broadcast Attribute", "Attribute and value for all sessions (e.g. system.cpu.trace = true):",
+                (String text) -> text.contains("=") ? null : "Expected <attribute> = <value>");
+        if (input == null)
+            return;
+
+        String[] assignment = input.split("=", 2);
+        controller.setAttribute(getTargets(), assignment[0].trim(), assignment[1].trim());
+        submitted();
+    }
+
+    private void broadcastCommand() {
+        String input = ask("Broadcast Command", "Module command for all sessions (e.g. system.cpu dump):",
+                (String text) -> text.trim().split("\\s+").length >= 2 ? null : "Expected <module> <command> [args]");
+        if (input == null)
+            return;
+
+        String[] words = input.split("\\s+");
+        String[] args = new String[words.length - 1];
+        System.arraycopy(words, 1, args, 0, args.length);
+        controller.execute(getTargets(), words[0], args);
+        submitted();
+    }
+
+    private Button createButton(Composite parent, String text, String icon, Runnable action) {
+        Button button = new Button(parent, SWT.PUSH);
+        button.setText(text);
+        if (icon != null)
+            button.setImage(Resources.getImage(icon));
+        button.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                action.run();
+            }
+        });
+
+        buttons.add(button);
+        return button;
+    }
+
+    @PostConstruct
+    public void createComposite(Composite parent) {
+        controller = sessionService.getController();
+        parent.setLayout(new GridLayout());
+
+        Composite bar = new Composite(parent, SWT.NONE);
+        bar.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+        bar.setLayout(new RowLayout());
+
+        createButton(bar, "Connect", "icons/initiator.png", () -> {
+            controller.connect(getTargets());
+            submitted();
+        });
+        createButton(bar, "Run", "icons/resume.gif", () -> {
+            controller.run(getTargets());
+            submitted();
+        });
+        createButton(bar, "Stop", "icons/stop.gif", () -> {
+            controller.stop(getTargets());
+            submitted();
+        });
+        createButton(bar, "Step", "icons/step.gif", () -> {
+            controller.step(getTargets(), stepSpinner.getSelection());
+            submitted();
+        });
+
+        stepSpinner = new Spinner(bar, SWT.BORDER);
+        stepSpinner.setMinimum(1);
+        stepSpinner.setMaximum(1000000);
+        stepSpinner.setSelection(1);
+        stepSpinner.setToolTipText("Number of steps");
+
+        createButton(bar, "Quit", "icons/terminate.gif", () -> {
+            controller.quit(getTargets());
+            submitted();
+        });
+        createButton(bar, "Set Attribute...", "icons/attribute.gif", this::broadcastAttribute);
+        createButton(bar, "Execute...", "icons/method.gif", this::broadcastCommand);
+
+        Composite composite = new Composite(parent, SWT.NONE);
+        composite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+        viewer = new TableViewer(composite, SWT.BORDER | SWT.MULTI | SWT.FULL_SELECTION);
+        viewer.setContentProvider(contentProvider);
+
+        TableColumnLayout columnLayout = new TableColumnLayout();
+        addColumn(columnLayout, "Session", 3, new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return element.toString();
+            }
+
+            @Override
+            public Image getImage(Object element) {
+                return Resources.getImageFor(element);
+            }
+        });
+        addColumn(columnLayout, "State", 1, new StatusColumn() {
+            @Override
+            String getText(Session session, SessionStatus status) {
+                if (session.isRunning())
+                    return "running";
+                return session.isConnected() ? "connected" : "not connected";
+            }
+        });
+        addColumn(columnLayout, "Time", 2, new StatusColumn() {
+            @Override
+            String getText(Session session, SessionStatus status) {
+                return session.isConnected() ? String.format("%.9fs", session.getTime()) : "";
+            }
+        });
+        addColumn(columnLayout, "Delta Cycle", 1, new StatusColumn() {
+            @Override
+            String getText(Session session, SessionStatus status) {
+                return session.isConnected() ? Integer.toString(session.getDeltaCycle()) : "";
+            }
+        });
+        addColumn(columnLayout, "Last Operation", 2, new StatusColumn() {
+            @Override
+            String getText(Session session, SessionStatus status) {
+                if (status == null)
+                    return "";
+                return String.format("%s (%d ms)", status.getOperation(), status.getDuration());
+            }
+        });
+        addColumn(columnLayout, "Result", 4, new StatusColumn() {
+            @Override
+            String getText(Session session, SessionStatus status) {
+                if (status == null)
+                    return "";
+                if (status.hasFailed())
+                    return status.getError();
+                return status.getOutput() != null ? status.getOutput().replace('\n', ' ') : "ok";
+            }
+        });
+        composite.setLayout(columnLayout);
+
+        Table table = viewer.getTable();
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+
+        controller.addListener(controllerListener);
+        viewer.setInput(sessionService);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        controller.removeListener(controllerListener);
+    }
+
+    @Focus
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+
+    @Inject
+    @Optional
+    public void sessionChanged(@UIEventTopic(ISessionService.TOPIC_SESSION_ANY) Session session) {
+        if (viewer != null && !viewer.getControl().isDisposed())
+            viewer.refresh();
+    }
+
+}
@@ -18,6 +18,10 @@
 
 package org.vcml.explorer.ui.parts;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -31,7 +35,9 @@ import org.eclipse.e4.ui.di.UIEventTopic;
 import org.eclipse.e4.ui.services.IServiceConstants;
 import org.eclipse.e4.ui.workbench.modeling.ESelectionService;
 
+import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.BusyIndicator;
 import org.eclipse.swt.events.MenuEvent;
 import org.eclipse.swt.events.MenuListener;
 import org.eclipse.swt.events.SelectionEvent;
@@ -42,6 +48,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.swt.widgets.Shell;
@@ -60,6 +67,7 @@ import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerCell;
 import org.eclipse.jface.viewers.ViewerComparator;
 
+import org.vcml.session.AttributePreset;
 import org.vcml.session.Command;
 import org.vcml.session.Module;
 import org.vcml.session.Session;
@@ -204,6 +212,60 @@ public class HierarchyPart {
         // });
     }
 
+    private static final String[] PRESET_EXTENSIONS = { "*.preset", "*.*" };
+
+    private void exportPreset(Module module) {
+        Shell shell = Display.getDefault().getActiveShell();
+        FileDialog dialog = new FileDialog(shell, SWT.SAVE);
+        dialog.setText("Export attributes of " + module.getName());
+        dialog.setFilterExtensions(PRESET_EXTENSIONS);
+        dialog.setFileName(module.getName() + ".preset");
+        dialog.setOverwrite(true);
+        String path = dialog.open();
+        if (path == null)
+            return;
+
+        BusyIndicator.showWhile(Display.getDefault(), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AttributePreset.save(module, new File(path));
+                } catch (IOException e) {
+                    MessageDialog.openError(shell, "Export Attributes", e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void importPreset() {
+        Session session = sessionService.getSession();
+        Shell shell = Display.getDefault().getActiveShell();
+        FileDialog dialog = new FileDialog(shell, SWT.OPEN);
+        dialog.setText("Import attributes into " + session);
+        dialog.setFilterExtensions(PRESET_EXTENSIONS);
+        String path = dialog.open();
+        if (path == null)
+            return;
+
+        BusyIndicator.showWhile(Display.getDefault(), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    List<String> failed = AttributePreset.apply(session, new File(path));
+                    if (!failed.isEmpty())
+                        MessageDialog.openWarning(shell, "Import Attributes",
+                                "Failed to set " + failed.size() + " attribute(s): " + String.join(", ", failed));
+                } catch (IOException e) {
+                    MessageDialog.openError(shell, "Import Attributes", e.getMessage());
+                } catch (SessionException e) {
+                    sessionService.reportSessionError(session, e);
+                    return;
+                }
+                sessionService.refreshSession(session);
+            }
+        });
+    }
+
     private Menu buildCommandMenu(MenuItem parent, Module module) {
         Menu menu = new Menu(parent);
 
@@ -335,6 +397,43 @@ public class HierarchyPart {
                         // Nothing to do
                     }
                 });
+
+                new MenuItem(menu, SWT.SEPARATOR);
+
+                Session session = sessionService.getSession();
+                boolean halted = session != null && session.isConnected() && !session.isRunning();
+
+                MenuItem exportItem = new MenuItem(menu, SWT.NONE);
+                exportItem.setEnabled(active && halted);
+                exportItem.setText("Export Attributes...");
+                exportItem.setImage(Resources.getImage("icons/attribute.gif"));
+                exportItem.addSelectionListener(new SelectionListener() {
+                    @Override
+                    public void widgetSelected(SelectionEvent e) {
+                        exportPreset(selectedModule);
+                    }
+
+                    @Override
+                    public void widgetDefaultSelected(SelectionEvent e) {
+                        // Nothing to do
+                    }
+                });
+
+                MenuItem importItem = new MenuItem(menu, SWT.NONE);
+                importItem.setEnabled(active && halted);
+                importItem.setText("Import Attributes...");
+                importItem.setImage(Resources.getImage("icons/attribute.gif"));
+                importItem.addSelectionListener(new SelectionListener() {
+                    @Override
+                    public void widgetSelected(SelectionEvent e) {
+                        importPreset();
+                    }
+
+                    @Override
+                    public void widgetDefaultSelected(SelectionEvent e) {
+                        // Nothing to do
+                    }
+                });
             }
 
             @Override
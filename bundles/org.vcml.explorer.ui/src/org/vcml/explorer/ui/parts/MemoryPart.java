@@ -18,50 +18,80 @@
 
 package org.vcml.explorer.ui.parts;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.e4.core.di.annotations.Optional;
 import org.eclipse.e4.ui.di.Focus;
 import org.eclipse.e4.ui.di.UIEventTopic;
 import org.eclipse.e4.ui.workbench.modeling.ESelectionService;
-import org.eclipse.jface.viewers.CellLabelProvider;
+import org.eclipse.jface.dialogs.InputDialog;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.IContentProvider;
 import org.eclipse.jface.viewers.ILazyContentProvider;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.TableViewerColumn;
-import org.eclipse.jface.viewers.ViewerCell;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
-import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Scale;
 import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.Text;
 
+import org.vcml.explorer.ui.HexLabelProvider;
 import org.vcml.explorer.ui.MemoryRow;
+import org.vcml.explorer.ui.Prefetcher;
 import org.vcml.explorer.ui.Resources;
 import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Attribute;
+import org.vcml.session.MemoryCache;
+import org.vcml.session.MemoryHistory;
+import org.vcml.session.MemorySearch;
+import org.vcml.session.MemoryTransfer;
 import org.vcml.session.Module;
 import org.vcml.session.Session;
+import org.vcml.session.SessionException;
+import org.vcml.session.SessionSnapshot;
+import org.vcml.session.SimulationTime;
 
 public class MemoryPart {
 
     public static final int COLUMN_WIDTH_ADDRESS = 120;
 
-    public static final int COLUMN_WIDTH_DATA = 35;
-
-    public static final int COLUMN_WIDTH_SPACER = 10;
-
     public static final int PAGE_SIZE = 4096;
 
     public static final int DEFAULT_INCREMENT = PAGE_SIZE / MemoryRow.SIZE;
 
-    public static final String ERROR_CELL = "--";
+    // Rows the table holds at most; larger memories are shown through a
+    // window that slides along while scrolling or jumping.
+    public static final int MAX_ROWS = 1 << 24;
+
+    public static final String ATTRIBUTE_SIZE = "size";
+
+    public static final int[] GROUPINGS = { 1, 2, 4, 8 };
 
     private ISessionService service;
 
@@ -75,6 +105,84 @@ public class MemoryPart {
 
     private TableViewerColumn address;
 
+    private TableViewerColumn data;
+
+    private TableViewerColumn ascii;
+
+    private HexLabelProvider dataLabelProvider = new HexLabelProvider(false);
+
+    private HexLabelProvider asciiLabelProvider = new HexLabelProvider(true);
+
+    private Text jumpText;
+
+    private Text findText;
+
+    private Label findStatus;
+
+    private Button loadButton;
+
+    private Button historyButton;
+
+    private Composite historyBar;
+
+    private Scale historyScale;
+
+    private Label historyLabel;
+
+    private SessionSnapshot.Range historyRange = null; // watched by this view
+
+    private MemoryHistory.Record[] records = new MemoryHistory.Record[0];
+
+    private int historyIndex = -1; // record shown or -1 for the live memory
+
+    private org.eclipse.swt.widgets.List results;
+
+    private List<Long> resultAddresses = new ArrayList<Long>();
+
+    private MemorySearch search;
+
+    private Runnable searchUpdater;
+
+    // Matches reported by the search thread, not yet shown.
+    private List<Long> found = new ArrayList<Long>();
+
+    private long size = -1; // unknown
+
+    private long base = 0; // address of the first row
+
+    private String addressFormat = "%08x";
+
+    private Prefetcher prefetcher;
+
+    private Prefetcher.Loader pageLoader = new Prefetcher.Loader() {
+        @Override
+        public Runnable prepare(long first, long last, BooleanSupplier superseded) {
+            if (!session.isConnected() || session.isRunning())
+                return null;
+
+            MemoryCache cache = session.getMemoryCache();
+            long start = base + first * MemoryRow.SIZE;
+            long end = base + last * MemoryRow.SIZE;
+            long[] pages = new long[(int) ((end - start) / MemoryCache.PAGE_SIZE) + 2];
+            for (int i = 0; i < pages.length; i++)
+                pages[i] = Math.min(start + (long) i * MemoryCache.PAGE_SIZE, end);
+
+            // One page per exchange, so that rows the table reads in the
+            // meantime only wait for a single page.
+            return () -> {
+                for (long page : pages) {
+                    if (superseded.getAsBoolean())
+                        return;
+                    try {
+                        cache.fetch(name, page);
+                    } catch (SessionException e) {
+                        return; // reported when the rows are read
+                    }
+                }
+            };
+        }
+    };
+
     private Listener scrollListener = new Listener() {
         private int lastIndex = 0;
 
@@ -89,8 +197,13 @@ public class MemoryPart {
 
             if (index != lastIndex) {
                 lastIndex = index;
-                if (index > (count - visibleElements))
+                if (size < 0 && index > (count - visibleElements))
                     viewer.setItemCount(count + DEFAULT_INCREMENT);
+                if (size >= 0 && index > (count - visibleElements) && getEnd() < size)
+                    slide(index, MAX_ROWS / 2);
+                if (size >= 0 && index == 0 && base > 0)
+                    slide(index, -MAX_ROWS / 2);
+                prefetcher.update(table.getTopIndex(), visibleElements, table.getItemCount());
             }
         }
     };
@@ -98,14 +211,18 @@ public class MemoryPart {
     private IContentProvider contentProvider = new ILazyContentProvider() {
         @Override
         public void updateElement(int index) {
-            viewer.replace(new MemoryRow(index * MemoryRow.SIZE, memory), index);
+            long addr = base + index * MemoryRow.SIZE;
+            if (historyIndex >= 0)
+                viewer.replace(new MemoryRow(addr, session.getMemoryHistory(), historyIndex, name), index);
+            else
+                viewer.replace(new MemoryRow(addr, session.getMemoryCache(), name), index);
         }
     };
 
     private ColumnLabelProvider addressLabelProvider = new ColumnLabelProvider() {
         @Override
         public String getText(Object element) {
-            return String.format("%08x", ((MemoryRow) element).getAddress());
+            return String.format(addressFormat, ((MemoryRow) element).getAddress());
         }
 
         @Override
@@ -119,41 +236,381 @@ public class MemoryPart {
         }
     };
 
-    private class DataColumnLabelProvider extends ColumnLabelProvider {
+    /**
+     * Returns the size of a memory as given by its size attribute or -1.
+     */
+    public static long getMemorySize(Module memory) {
+        if (memory == null)
+            return -1;
+
+        for (Attribute attr : memory.getAttributes()) {
+            if (!attr.getBaseName().equals(ATTRIBUTE_SIZE))
+                continue;
+            try {
+                return Long.decode(attr.getValue().trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
 
-        private int column = -1;
+    // Address after the last row of the window.
+    private long getEnd() {
+        return base + (long) viewer.getTable().getItemCount() * MemoryRow.SIZE;
+    }
 
-        public DataColumnLabelProvider(int column) {
-            this.column = column;
+    private int getRowCount() {
+        if (size < 0)
+            return Math.max(viewer.getTable().getItemCount(), DEFAULT_INCREMENT);
+        return (int) Math.min((size - base + MemoryRow.SIZE - 1) / MemoryRow.SIZE, MAX_ROWS);
+    }
+
+    // Places the window so that it holds the address, keeping the current one
+    // if possible. Returns the row of the address.
+    private int setWindow(long target) {
+        long window = (long) MAX_ROWS * MemoryRow.SIZE;
+        long newBase = base;
+        if (size >= 0 && size <= window)
+            newBase = 0;
+        else if (target < base || target >= base + window) {
+            newBase = Math.max(0, target - window / 2);
+            newBase -= newBase % PAGE_SIZE;
         }
 
-        @Override
-        public String getText(Object element) {
-            if (!(element instanceof MemoryRow))
-                return ERROR_CELL;
+        if (newBase != base) {
+            base = newBase;
+            prefetcher.reset();
+            viewer.setItemCount(getRowCount());
+            viewer.refresh();
+        }
 
-            MemoryRow row = (MemoryRow) element;
-            if (row.isError())
-                return ERROR_CELL;
+        return (int) ((target - base) / MemoryRow.SIZE);
+    }
 
-            return String.format("%02x", row.getBytes()[column]);
+    // Moves the window by a number of rows, keeping the same rows in view.
+    private void slide(int index, int rows) {
+        long target = base + (long) index * MemoryRow.SIZE;
+        long newBase = Math.max(0, base + (long) rows * MemoryRow.SIZE);
+        if (newBase == base)
+            return;
+
+        base = newBase;
+        prefetcher.reset();
+        viewer.setItemCount(getRowCount());
+        viewer.refresh();
+        viewer.getTable().setTopIndex((int) ((target - base) / MemoryRow.SIZE));
+    }
+
+    /**
+     * Scrolls to and selects the row holding the given address. Only the rows
+     * in view are read, so any address can be reached directly.
+     */
+    public void jumpTo(long target) {
+        if (target < 0 || (size >= 0 && target >= size)) {
+            jumpText.setToolTipText(String.format("Address outside of memory (size 0x%x)", size));
+            return;
         }
 
-        @Override
-        public Font getFont(Object element) {
-            return Resources.getMonoSpaceFont();
+        int row = setWindow(target - target % MemoryRow.SIZE);
+        Table table = viewer.getTable();
+        if (size < 0 && row >= table.getItemCount())
+            viewer.setItemCount(row + DEFAULT_INCREMENT);
+
+        table.setTopIndex(row);
+        table.setSelection(row);
+        jumpText.setToolTipText(null);
+    }
+
+    // Moves matches reported by the search thread into the result list.
+    private void showResults(MemorySearch current) {
+        if (results.isDisposed() || current != search)
+            return;
+
+        List<Long> addresses;
+        synchronized (found) {
+            addresses = new ArrayList<Long>(found);
+            found.clear();
         }
-    };
 
-    private static void addSpacerColumn(TableViewer viewer) {
-        TableViewerColumn spacer = new TableViewerColumn(viewer, SWT.NONE);
-        spacer.getColumn().setWidth(COLUMN_WIDTH_SPACER);
-        spacer.setLabelProvider(new CellLabelProvider() {
+        for (long addr : addresses) {
+            results.add(String.format(addressFormat, addr));
+            resultAddresses.add(addr);
+        }
+
+        long range = current.getEnd() - current.getStart();
+        String status = current.getMatches() + " matches";
+        if (current.getMatches() >= current.getMaxMatches())
+            status += " (limit)";
+        else if (current.getScanned() < range && !current.isCancelled()) {
+            status += String.format(", %d%%", range > 0 ? current.getScanned() * 100 / range : 100);
+            results.getDisplay().timerExec(500, searchUpdater); // still running
+        }
+        findStatus.setText(status);
+        findStatus.getParent().layout();
+
+        if (!results.getVisible() && !resultAddresses.isEmpty()) {
+            ((GridData) results.getLayoutData()).exclude = false;
+            results.setVisible(true);
+            results.getParent().layout();
+        }
+    }
+
+    /**
+     * Searches the memory for the given patterns in the background, showing
+     * matches as they are found. A running search is cancelled first.
+     */
+    public void find(byte[][] patterns) {
+        cancelSearch();
+        results.removeAll();
+        resultAddresses.clear();
+        synchronized (found) {
+            found.clear();
+        }
+
+        long end = size >= 0 ? size : getEnd();
+        MemorySearch current = new MemorySearch(session, name, 0, end, patterns);
+        Display display = results.getDisplay();
+        search = current;
+        Runnable updater = () -> showResults(current);
+        searchUpdater = updater;
+
+        Thread thread = new Thread(() -> {
+            try {
+                current.run((pattern, addr) -> {
+                    boolean first;
+                    synchronized (found) {
+                        first = found.isEmpty();
+                        found.add(addr);
+                    }
+                    if (first)
+                        display.asyncExec(updater);
+                });
+            } catch (SessionException e) {
+                display.asyncExec(() -> findText.setToolTipText(e.getMessage()));
+            }
+            display.asyncExec(updater);
+        }, "vcml-search-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void cancelSearch() {
+        if (search != null)
+            search.cancel();
+        search = null;
+    }
+
+    /**
+     * Shows the data bytes in groups of the given size.
+     */
+    public void setGrouping(int bytes) {
+        dataLabelProvider.setGrouping(bytes);
+        data.getColumn().setWidth(dataLabelProvider.getWidth(viewer.getControl()));
+        viewer.getTable().redraw();
+    }
+
+    /**
+     * Starts recording a range of this memory into the session history,
+     * asking for the range first, or stops recording it.
+     */
+    public void setHistory(boolean enabled) {
+        MemoryHistory history = session.getMemoryHistory();
+        if (historyRange != null) {
+            history.unwatch(historyRange);
+            if (history.getWatched().length == 0)
+                history.setEnabled(false);
+            historyRange = null;
+        }
+
+        if (enabled) {
+            Table table = viewer.getTable();
+            long first = base + (long) table.getTopIndex() * MemoryRow.SIZE;
+            first -= first % PAGE_SIZE;
+            long rows = Math.max(1, table.getClientArea().height / Math.max(1, table.getItemHeight()));
+            long length = (rows * MemoryRow.SIZE + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE + PAGE_SIZE;
+
+            InputDialog input = new InputDialog(table.getShell(), "Memory History",
+                    "Range to record on every step or stop (start+length or start-end):",
+                    String.format("0x%x+0x%x", first, length), null);
+            try {
+                if (input.open() == InputDialog.OK) {
+                    historyRange = SessionSnapshot.Range.parse(name + ":" + input.getValue().trim());
+                    history.watch(historyRange);
+                    history.setEnabled(true);
+                    history.record();
+                }
+            } catch (SessionException e) {
+                MessageDialog.openError(table.getShell(), "Memory History", e.getMessage());
+            }
+        }
+
+        historyButton.setSelection(historyRange != null);
+        ((GridData) historyBar.getLayoutData()).exclude = historyRange == null;
+        historyBar.setVisible(historyRange != null);
+        historyBar.getParent().layout();
+        updateHistory();
+    }
+
+    // Reloads the records and shows the live memory.
+    private void updateHistory() {
+        records = session.getMemoryHistory().getRecords();
+        historyScale.setMaximum(Math.max(1, records.length));
+        historyScale.setSelection(records.length);
+        historyScale.setEnabled(records.length > 0);
+        showRecord(records.length);
+    }
+
+    // Shows one of the records, the position after the last one is live.
+    private void showRecord(int position) {
+        int previous = historyIndex;
+        if (position < records.length) {
+            MemoryHistory.Record record = records[position];
+            historyIndex = record.getIndex();
+            historyLabel.setText(String.format("%d/%d at %s", position + 1, records.length,
+                    SimulationTime.format(record.getTime())));
+        } else {
+            historyIndex = -1;
+            historyLabel.setText("live");
+        }
+
+        historyLabel.getParent().layout();
+        if (previous != historyIndex)
+            viewer.refresh();
+    }
+
+    /**
+     * Asks for a range and a file and writes the range into the file.
+     */
+    public void dump() {
+        long end = size >= 0 ? size : getEnd();
+        InputDialog input = new InputDialog(viewer.getControl().getShell(), "Dump Memory",
+                "Range to dump (start+length or start-end):", String.format("0x0+0x%x", end), null);
+        if (input.open() != InputDialog.OK)
+            return;
+
+        SessionSnapshot.Range range;
+        try {
+            range = SessionSnapshot.Range.parse(name + ":" + input.getValue().trim());
+        } catch (SessionException e) {
+            MessageDialog.openError(viewer.getControl().getShell(), "Dump failed", e.getMessage());
+            return;
+        }
+
+        FileDialog dialog = new FileDialog(viewer.getControl().getShell(), SWT.SAVE);
+        dialog.setText("Dump " + name);
+        dialog.setFileName(memory.getBaseName() + ".bin");
+        dialog.setOverwrite(true);
+        String file = dialog.open();
+        if (file == null)
+            return;
+
+        IRunnableWithProgress runnable = new IRunnableWithProgress() {
             @Override
-            public void update(ViewerCell cell) {
-                cell.setText(" ");
+            public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                // monitor works in KiB to stay within int
+                monitor.beginTask("Dumping " + range, (int) Math.min(range.getLength() >> 10, Integer.MAX_VALUE));
+                try {
+                    MemoryTransfer.dump(session, name, range.getAddress(), range.getLength(), Paths.get(file),
+                            new MemoryTransfer.Progress() {
+                                @Override
+                                public void worked(long bytes) {
+                                    monitor.worked((int) (bytes >> 10));
+                                }
+
+                                @Override
+                                public boolean isCanceled() {
+                                    return monitor.isCanceled();
+                                }
+                            });
+                } catch (SessionException e) {
+                    throw new InvocationTargetException(e);
+                } finally {
+                    monitor.done();
+                }
             }
-        });
+        };
+
+        try {
+            new ProgressMonitorDialog(viewer.getControl().getShell()).run(true, true, runnable);
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(viewer.getControl().getShell(), "Dump failed", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            // canceled
+        }
+    }
+
+    // The simulator reads the image itself, so it must see our files.
+    private boolean canLoad() {
+        return memory != null && memory.findCommand(MemoryTransfer.CMD_LOAD) != null && session.isLocal();
+    }
+
+    /**
+     * Asks for an image file and an offset and loads the image using the
+     * load command of the memory. The simulator reads the file in a single
+     * command, so loads report no progress and cannot be canceled.
+     */
+    public void load() {
+        FileDialog dialog = new FileDialog(viewer.getControl().getShell(), SWT.OPEN);
+        dialog.setText("Load " + name);
+        String file = dialog.open();
+        if (file == null)
+            return;
+
+        long length;
+        try {
+            length = Files.size(Paths.get(file));
+        } catch (IOException e) {
+            MessageDialog.openError(viewer.getControl().getShell(), "Load failed", "Cannot read " + file);
+            return;
+        }
+
+        InputDialog input = new InputDialog(viewer.getControl().getShell(), "Load Memory",
+                String.format("Loading %s (%d bytes). The simulator reads the file itself, so its path must be "
+                        + "valid on the simulation host.\n\nOffset to load the image at (hex):", file, length),
+                "0x0", null);
+        if (input.open() != InputDialog.OK)
+            return;
+
+        try {
+            long offset = Long.parseUnsignedLong(input.getValue().trim().replaceFirst("^0[xX]", ""), 16);
+            IRunnableWithProgress runnable = new IRunnableWithProgress() {
+                @Override
+                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                    monitor.beginTask("Loading " + file + " (" + length + " bytes)", IProgressMonitor.UNKNOWN);
+                    try {
+                        MemoryTransfer.load(session, name, Paths.get(file), offset);
+                    } catch (SessionException e) {
+                        throw new InvocationTargetException(e);
+                    } finally {
+                        monitor.done();
+                    }
+                }
+            };
+
+            new ProgressMonitorDialog(viewer.getControl().getShell()).run(true, false, runnable);
+        } catch (NumberFormatException e) {
+            MessageDialog.openError(viewer.getControl().getShell(), "Load failed", "Not a hexadecimal offset");
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(viewer.getControl().getShell(), "Load failed", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            // not cancelable
+        }
+
+        viewer.refresh();
+    }
+
+    private void updateSize() {
+        long newSize = getMemorySize(memory);
+        if (newSize == size)
+            return;
+
+        size = newSize;
+        base = 0;
+        addressFormat = size > 0xffffffffL ? "%016x" : "%08x";
+        address.getColumn().setWidth(size > 0xffffffffL ? 2 * COLUMN_WIDTH_ADDRESS : COLUMN_WIDTH_ADDRESS);
+        viewer.setItemCount(size < 0 ? DEFAULT_INCREMENT : getRowCount());
     }
 
     @Inject
@@ -167,7 +624,112 @@ public class MemoryPart {
     @PostConstruct
     public void createComposite(Composite parent, ISessionService service) {
         Composite composite = new Composite(parent, SWT.NONE);
-        composite.setLayout(new FillLayout());
+        composite.setLayout(new GridLayout());
+
+        Composite toolbar = new Composite(composite, SWT.NONE);
+        GridLayout toolbarLayout = new GridLayout(7, false);
+        toolbarLayout.marginWidth = toolbarLayout.marginHeight = 0;
+        toolbar.setLayout(toolbarLayout);
+        toolbar.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+
+        jumpText = new Text(toolbar, SWT.BORDER | SWT.SEARCH);
+        jumpText.setMessage("go to address (hex)");
+        jumpText.setFont(Resources.getMonoSpaceFont());
+        jumpText.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+        jumpText.addListener(SWT.DefaultSelection, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                String text = jumpText.getText().trim().replaceFirst("^0[xX]", "");
+                try {
+                    jumpTo(Long.parseUnsignedLong(text, 16));
+                } catch (NumberFormatException e) {
+                    jumpText.setToolTipText("Not a hexadecimal address");
+                }
+            }
+        });
+
+        findText = new Text(toolbar, SWT.BORDER | SWT.SEARCH | SWT.ICON_CANCEL);
+        findText.setMessage("find bytes (hex, \"text\", a|b)");
+        findText.setFont(Resources.getMonoSpaceFont());
+        findText.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+        findText.addListener(SWT.DefaultSelection, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                if (event.detail == SWT.ICON_CANCEL || findText.getText().trim().isEmpty()) {
+                    cancelSearch();
+                    return;
+                }
+
+                try {
+                    findText.setToolTipText(null);
+                    find(MemorySearch.parsePatterns(findText.getText()));
+                } catch (IllegalArgumentException e) {
+                    findText.setToolTipText(e.getMessage());
+                }
+            }
+        });
+
+        findStatus = new Label(toolbar, SWT.NONE);
+
+        Combo grouping = new Combo(toolbar, SWT.READ_ONLY);
+        for (int bytes : GROUPINGS)
+            grouping.add(bytes + (bytes == 1 ? " byte" : " bytes"));
+        grouping.select(0);
+        grouping.setToolTipText("Bytes per group");
+        grouping.addListener(SWT.Selection, event -> setGrouping(GROUPINGS[grouping.getSelectionIndex()]));
+
+        Button dumpButton = new Button(toolbar, SWT.PUSH);
+        dumpButton.setText("Dump...");
+        dumpButton.addListener(SWT.Selection, event -> dump());
+
+        loadButton = new Button(toolbar, SWT.PUSH);
+        loadButton.setText("Load...");
+        loadButton.addListener(SWT.Selection, event -> load());
+        loadButton.setEnabled(canLoad());
+        loadButton.setToolTipText("Load an image, only for simulators running on this machine");
+
+        historyButton = new Button(toolbar, SWT.TOGGLE);
+        historyButton.setText("History");
+        historyButton.setToolTipText("Record this memory on every step or stop");
+        historyButton.setEnabled(!session.isOffline());
+        historyButton.addListener(SWT.Selection, event -> setHistory(historyButton.getSelection()));
+
+        historyBar = new Composite(composite, SWT.NONE);
+        GridLayout historyLayout = new GridLayout(2, false);
+        historyLayout.marginWidth = historyLayout.marginHeight = 0;
+        historyBar.setLayout(historyLayout);
+        GridData historyData = new GridData(SWT.FILL, SWT.NONE, true, false);
+        historyData.exclude = true;
+        historyBar.setLayoutData(historyData);
+        historyBar.setVisible(false);
+
+        historyScale = new Scale(historyBar, SWT.HORIZONTAL);
+        historyScale.setMinimum(0);
+        historyScale.setIncrement(1);
+        historyScale.setPageIncrement(10);
+        historyScale.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+        historyScale.addListener(SWT.Selection, event -> showRecord(historyScale.getSelection()));
+
+        historyLabel = new Label(historyBar, SWT.NONE);
+        historyLabel.setText("live");
+
+        results = new org.eclipse.swt.widgets.List(composite, SWT.BORDER | SWT.SINGLE | SWT.V_SCROLL);
+        results.setFont(Resources.getMonoSpaceFont());
+        GridData resultsData = new GridData(SWT.FILL, SWT.NONE, true, false);
+        resultsData.heightHint = 5 * results.getItemHeight();
+        resultsData.exclude = true;
+        results.setLayoutData(resultsData);
+        results.setVisible(false);
+        results.addListener(SWT.Selection, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                int index = results.getSelectionIndex();
+                if (index >= 0 && index < resultAddresses.size())
+                    jumpTo(resultAddresses.get(index));
+            }
+        });
+
+        prefetcher = new Prefetcher("vcml-prefetch-" + name, DEFAULT_INCREMENT, pageLoader);
 
         viewer = new TableViewer(composite, SWT.VIRTUAL);
         viewer.setUseHashlookup(true);
@@ -178,20 +740,19 @@ public class MemoryPart {
         address.getColumn().setWidth(COLUMN_WIDTH_ADDRESS);
         address.setLabelProvider(addressLabelProvider);
 
-        for (int i = 0; i < MemoryRow.SIZE; i++) {
-            if ((i % 4) == 0)
-                addSpacerColumn(viewer);
-
-            TableViewerColumn column = new TableViewerColumn(viewer, SWT.CENTER);
-            column.getColumn().setText(String.format("+%01X", i));
-            column.getColumn().setWidth(COLUMN_WIDTH_DATA);
-            column.setLabelProvider(new DataColumnLabelProvider(i));
-        }
+        data = new TableViewerColumn(viewer, SWT.LEFT);
+        data.getColumn().setText("Data");
+        data.getColumn().setWidth(dataLabelProvider.getWidth(viewer.getControl()));
+        data.setLabelProvider(dataLabelProvider);
 
-        addSpacerColumn(viewer);
+        ascii = new TableViewerColumn(viewer, SWT.LEFT);
+        ascii.getColumn().setText("ASCII");
+        ascii.getColumn().setWidth(asciiLabelProvider.getWidth(viewer.getControl()));
+        ascii.setLabelProvider(asciiLabelProvider);
 
         viewer.setInput(memory);
         viewer.setItemCount(DEFAULT_INCREMENT);
+        updateSize();
 
         Table table = viewer.getTable();
         table.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
@@ -207,9 +768,15 @@ public class MemoryPart {
     }
 
     public void update() {
+        prefetcher.reset();
         memory = service.findModule(session, name);
         viewer.setInput(memory);
         viewer.getControl().setEnabled(memory != null);
+        loadButton.setEnabled(canLoad());
+        if (memory != null)
+            updateSize();
+        if (historyRange != null)
+            updateHistory();
     }
 
     @Focus
@@ -217,6 +784,17 @@ public class MemoryPart {
         viewer.getTable().setFocus();
     }
 
+    @PreDestroy
+    public void dispose() {
+        cancelSearch();
+        if (historyRange != null) {
+            session.getMemoryHistory().unwatch(historyRange);
+            if (session.getMemoryHistory().getWatched().length == 0)
+                session.getMemoryHistory().setEnabled(false);
+        }
+        prefetcher.dispose();
+    }
+
     @Inject
     @Optional
     public void sessionChanged(@UIEventTopic(ISessionService.TOPIC_SESSION_ANY) Session session) {
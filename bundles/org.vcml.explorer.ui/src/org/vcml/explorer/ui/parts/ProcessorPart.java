@@ -18,19 +18,24 @@
 
 package org.vcml.explorer.ui.parts;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import org.eclipse.e4.core.di.annotations.Optional;
 import org.eclipse.e4.ui.di.Focus;
 import org.eclipse.e4.ui.di.UIEventTopic;
 import org.eclipse.e4.ui.workbench.modeling.ESelectionService;
-import org.eclipse.jface.fieldassist.AutoCompleteField;
 import org.eclipse.jface.fieldassist.ComboContentAdapter;
+import org.eclipse.jface.fieldassist.ContentProposal;
+import org.eclipse.jface.fieldassist.ContentProposalAdapter;
+import org.eclipse.jface.fieldassist.IContentProposal;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.ComboViewer;
 import org.eclipse.jface.viewers.ILazyContentProvider;
@@ -54,9 +59,12 @@ import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Table;
 
+import org.vcml.explorer.ui.Disassembly;
 import org.vcml.explorer.ui.Instruction;
+import org.vcml.explorer.ui.Prefetcher;
 import org.vcml.explorer.ui.Resources;
 import org.vcml.explorer.ui.Symbol;
+import org.vcml.explorer.ui.SymbolTable;
 import org.vcml.explorer.ui.services.ISessionService;
 import org.vcml.session.Module;
 import org.vcml.session.Session;
@@ -69,11 +77,12 @@ public class ProcessorPart {
 
     public static final int SCROLL_SIZE = 100;
 
+    private static final Pattern PATTERN_PC = Pattern.compile("PC 0x([0-9a-f]{16})");
+
     public static long getProgramCounter(Module processor) {
         try {
             String result = processor.execute("dump");
-            Pattern pattern = Pattern.compile("PC 0x([0-9a-f]{16})");
-            Matcher matcher = pattern.matcher(result);
+            Matcher matcher = PATTERN_PC.matcher(result);
 
             if (matcher.find())
                 return Long.parseLong(matcher.group(1), 16);
@@ -93,13 +102,12 @@ public class ProcessorPart {
 
     private long topAddress;
     private long programCounter;
-    private HashMap<Long, Instruction> instructions;
-    private Symbol[] symbols;
+    private Map<Long, Instruction> instructions;
+    private Disassembly disassembly = new Disassembly();
+    private SymbolTable symbols;
     private Symbol symbolPC;
-    private String[] symbolNames;
 
     private ComboViewer symbolViewer;
-    private AutoCompleteField symbolAutoComplete;
 
     private TableViewer instructionViewer;
     private TableViewerColumn iconColumn;
@@ -109,6 +117,50 @@ public class ProcessorPart {
     private TableViewerColumn dissColumn;
     private TableViewerColumn symbColumn;
 
+    private Prefetcher prefetcher;
+
+    // Disassembles the rows ahead into the instruction map of the current range.
+    private Prefetcher.Loader instructionLoader = new Prefetcher.Loader() {
+        @Override
+        public Runnable prepare(long first, long last, BooleanSupplier superseded) {
+            if (processor == null || !session.isConnected() || session.isRunning())
+                return null;
+
+            final Module target = processor;
+            final Map<Long, Instruction> rows = instructions;
+            final long base = topAddress;
+            return () -> disassemble(target, rows, base, first, last);
+        }
+    };
+
+    // Fills the rows first..last missing from the row map, fetching each run
+    // of consecutive missing rows through the disassembly cache at once.
+    private void disassemble(Module target, Map<Long, Instruction> rows, long base, long first, long last) {
+        long row = first;
+        while (row <= last && !Thread.currentThread().isInterrupted()) {
+            if (rows.containsKey(base + row * Instruction.SIZE)) {
+                row++;
+                continue;
+            }
+
+            long end = row;
+            while (end < last && end - row + 1 < Instruction.MAX_COUNT
+                    && !rows.containsKey(base + (end + 1) * Instruction.SIZE))
+                end++;
+
+            long address = base + row * Instruction.SIZE;
+            Instruction[] insns = disassembly.get(target, address, (int) (end - row + 1));
+            for (int i = 0; i < insns.length; i++)
+                rows.put(address + i * Instruction.SIZE, insns[i]);
+            row = end + 1;
+        }
+    }
+
+    private int getVisibleRows() {
+        Table table = instructionViewer.getTable();
+        return table.getSize().y / Math.max(1, table.getItemHeight()) + 1;
+    }
+
     private void scrollDown() {
         int count = instructionViewer.getTable().getItemCount();
         instructionViewer.setItemCount(count + SCROLL_SIZE);
@@ -121,6 +173,7 @@ public class ProcessorPart {
         int count = instructionViewer.getTable().getItemCount();
         instructionViewer.setItemCount(count + SCROLL_SIZE);
         instructionViewer.refresh();
+        prefetcher.reset(); // rows have moved
 
         int selected = (int) ((programCounter - topAddress) / Instruction.SIZE);
         Table table = instructionViewer.getTable();
@@ -136,9 +189,7 @@ public class ProcessorPart {
             int index = table.getTopIndex();
             int count = table.getItemCount();
 
-            int viewerHeight = table.getSize().y;
-            int elementHeight = table.getItemHeight();
-            int visibleElements = viewerHeight / elementHeight + 1;
+            int visibleElements = getVisibleRows();
 
             if (index != lastIndex) {
                 lastIndex = index;
@@ -146,6 +197,7 @@ public class ProcessorPart {
                     scrollDown();
                 if ((index == 0) && (topAddress > 0))
                     scrollUp();
+                prefetcher.update(table.getTopIndex(), visibleElements, table.getItemCount());
             }
         }
     };
@@ -153,15 +205,24 @@ public class ProcessorPart {
     private Symbol lookupSymbol(String name) {
         if (name.equals(PROGRAM_COUNTER))
             return symbolPC;
-        for (Symbol sym : symbols)
-            if (sym.getName().equals(name))
-                return sym;
-        return null;
+        return (symbols != null) ? symbols.find(name) : null;
+    }
+
+    private IContentProposal[] proposeSymbols(String contents, int position) {
+        if (symbols == null)
+            return new IContentProposal[0];
+
+        String[] names = symbols.complete(contents, SymbolTable.MAX_PROPOSALS);
+        IContentProposal[] proposals = new IContentProposal[names.length];
+        for (int i = 0; i < names.length; i++)
+            proposals[i] = new ContentProposal(names[i]);
+        return proposals;
     }
 
     private void showRange(long address, long size) {
         topAddress = (address / size) * size;
-        instructions = new HashMap<Long, Instruction>();
+        instructions = new ConcurrentHashMap<Long, Instruction>();
+        prefetcher.reset();
 
         instructionViewer.setInput(processor);
         instructionViewer.setItemCount(SCROLL_SIZE);
@@ -217,7 +278,10 @@ public class ProcessorPart {
         });
 
         symbolViewer.getControl().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false));
-        symbolAutoComplete = new AutoCompleteField(symbolViewer.getControl(), new ComboContentAdapter(), null);
+        ContentProposalAdapter adapter = new ContentProposalAdapter(symbolViewer.getControl(),
+                new ComboContentAdapter(), this::proposeSymbols, null, null);
+        adapter.setPropagateKeys(true);
+        adapter.setProposalAcceptanceStyle(ContentProposalAdapter.PROPOSAL_REPLACE);
     }
 
     public void createInstructionTableViewer(Composite parent) {
@@ -239,11 +303,15 @@ public class ProcessorPart {
                 if (instructionViewer.isBusy())
                     return;
 
+                // fetch the whole visible window on a miss, the following
+                // rows are then served from the map
                 long address = topAddress + index * Instruction.SIZE;
                 Instruction insn = instructions.get(address);
-                if ((insn == null) || (insn.getAddress() != address)) {
-                    insn = new Instruction(address, processor);
-                    instructions.put(address, insn);
+                if (insn == null) {
+                    int count = instructionViewer.getTable().getItemCount();
+                    long last = Math.min(index + getVisibleRows(), count) - 1;
+                    disassemble(processor, instructions, topAddress, index, Math.max(index, last));
+                    insn = instructions.get(address);
                 }
 
                 instructionViewer.replace(insn, index);
@@ -397,9 +465,18 @@ public class ProcessorPart {
         symbColumn.setLabelProvider(new ColumnLabelProvider() {
             @Override
             public String getText(Object element) {
-                if (((Instruction) element).getInstruction() == 0)
+                Instruction insn = (Instruction) element;
+                if (insn.getInstruction() == 0)
                     return "";
-                return ((Instruction) element).getSymbol();
+
+                String sym = insn.getSymbol();
+                if ((sym == null || sym.isEmpty()) && symbols != null) {
+                    String location = symbols.describe(insn.getAddress());
+                    if (location != null)
+                        return "<" + location + ">";
+                }
+
+                return sym;
             }
 
             @Override
@@ -448,6 +525,8 @@ public class ProcessorPart {
         composite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
         composite.setLayout(new GridLayout());
 
+        prefetcher = new Prefetcher("vcml-prefetch-" + name, SCROLL_SIZE, instructionLoader);
+
         createSymbolComboViewer(composite);
         createInstructionTableViewer(composite);
 
@@ -459,24 +538,30 @@ public class ProcessorPart {
         instructionViewer.getTable().setFocus();
     }
 
+    @PreDestroy
+    public void dispose() {
+        prefetcher.dispose();
+    }
+
     public void refresh() {
         Table table = instructionViewer.getTable();
         if (!session.isConnected() || session.isRunning()) {
+            if (!session.isConnected())
+                symbols = null; // reload for the next program
             table.setEnabled(false);
             return;
         }
 
         table.setEnabled(true);
         processor = service.findModule(session, name);
+        disassembly.invalidate(); // revalidate cached code after stepping
         programCounter = getProgramCounter(processor);
         showRange(programCounter);
 
-        symbols = Symbol.findFunctions(processor);
+        // symbols do not change while stepping, index them once per connection
+        if (symbols == null || symbols.size() == 0)
+            symbols = SymbolTable.load(processor);
         symbolPC = new Symbol(PROGRAM_COUNTER, programCounter, true);
-        symbolNames = new String[symbols.length];
-        for (int i = 0; i < symbols.length; i++)
-            symbolNames[i] = symbols[i].getName();
-        symbolAutoComplete.setProposals(symbolNames);
     }
 
     @Inject
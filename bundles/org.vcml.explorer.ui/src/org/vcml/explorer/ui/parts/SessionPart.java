@@ -111,7 +111,11 @@ public class SessionPart {
         public String getText(Object element) {
             Session session = (Session) element;
             String desc = session.toString();
-            if (session.isRunning())
+            if (session.getImage() != null)
+                desc += " [image]";
+            else if (session.isOffline())
+                desc += " [snapshot]";
+            else if (session.isRunning())
                 desc += " [running]";
             else if (session.isConnected())
                 desc += " [connected]";
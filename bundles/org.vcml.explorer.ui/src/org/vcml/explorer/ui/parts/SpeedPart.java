@@ -0,0 +1,290 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.parts;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.eclipse.e4.core.di.annotations.Optional;
+import org.eclipse.e4.ui.di.Focus;
+import org.eclipse.e4.ui.di.UIEventTopic;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Menu;
+import org.eclipse.swt.widgets.MenuItem;
+
+import org.vcml.explorer.ui.Resources;
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.Session;
+import org.vcml.session.SessionException;
+import org.vcml.session.SpeedMeter;
+
+public class SpeedPart {
+
+    private static final int UPDATE_INTERVAL = 250; // ms
+
+    private static final int MARGIN = 4;
+
+    private static final int[] SERIES_COLORS = { SWT.COLOR_DARK_BLUE, SWT.COLOR_DARK_RED, SWT.COLOR_DARK_GREEN,
+            SWT.COLOR_DARK_MAGENTA, SWT.COLOR_DARK_CYAN, SWT.COLOR_DARK_YELLOW };
+
+    @Inject
+    private ISessionService sessionService;
+
+    private Session session;
+
+    private SpeedMeter meter;
+
+    private Session configured;
+
+    private Label summary;
+
+    private Canvas canvas;
+
+    private Runnable updater = new Runnable() {
+        @Override
+        public void run() {
+            if (canvas.isDisposed() || session == null || meter == null)
+                return;
+
+            if (meter.update(session.getMonitor().getSamples()) > 0)
+                updateView();
+
+            if (session.isRunning())
+                canvas.getDisplay().timerExec(UPDATE_INTERVAL, this);
+        }
+    };
+
+    private static String formatRatio(double ratio) {
+        return String.format("sim/wall %.4f", ratio);
+    }
+
+    private static String formatMIPS(String counter, double mips) {
+        return String.format("%s %.2f MIPS", counter, mips);
+    }
+
+    private static double findMax(SpeedMeter meter, int series) {
+        double max = 0.0;
+        for (int i = 0; i < meter.size(); i++) {
+            double value = series < 0 ? meter.getRatio(i) : meter.getMIPS(series, i);
+            max = Math.max(max, value);
+        }
+
+        return max;
+    }
+
+    // Each series is scaled to its own maximum; the legend gives the values.
+    private void drawSeries(GC gc, Rectangle area, int series) {
+        double max = findMax(meter, series);
+        int n = meter.size();
+        if (n < 2 || max <= 0.0)
+            return;
+
+        int[] points = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            double value = series < 0 ? meter.getRatio(i) : meter.getMIPS(series, i);
+            points[2 * i] = area.x + (int) ((long) i * (area.width - 1) / (meter.getCapacity() - 1));
+            points[2 * i + 1] = area.y + area.height - 1 - (int) (value / max * (area.height - 1));
+        }
+
+        gc.drawPolyline(points);
+    }
+
+    private Color seriesColor(int series) {
+        return Resources.getColor(SERIES_COLORS[(series + 1) % SERIES_COLORS.length]);
+    }
+
+    private PaintListener paintListener = new PaintListener() {
+        @Override
+        public void paintControl(PaintEvent e) {
+            Rectangle client = canvas.getClientArea();
+            e.gc.setBackground(Resources.getColor(SWT.COLOR_LIST_BACKGROUND));
+            e.gc.fillRectangle(client);
+            if (meter == null)
+                return;
+
+            e.gc.setFont(Resources.getMonoSpaceFont());
+            int lineHeight = e.gc.getFontMetrics().getHeight();
+            int legendHeight = lineHeight * (meter.getNumCounters() + 1);
+            Rectangle plot = new Rectangle(client.x + MARGIN, client.y + MARGIN + legendHeight,
+                    client.width - 2 * MARGIN, client.height - 2 * MARGIN - legendHeight);
+            if (plot.width <= 1 || plot.height <= 1)
+                return;
+
+            e.gc.setForeground(Resources.getColor(SWT.COLOR_WIDGET_NORMAL_SHADOW));
+            e.gc.drawRectangle(plot.x, plot.y, plot.width - 1, plot.height - 1);
+
+            String[] counters = meter.getCounters();
+            for (int series = -1; series < counters.length; series++) {
+                e.gc.setForeground(seriesColor(series));
+                String text = series < 0 ? formatRatio(findMax(meter, series))
+                        : formatMIPS(counters[series], findMax(meter, series));
+                e.gc.drawText("max " + text, client.x + MARGIN, client.y + MARGIN + (series + 1) * lineHeight, true);
+                drawSeries(e.gc, plot, series);
+            }
+        }
+    };
+
+    private void updateView() {
+        if (meter == null || meter.size() == 0) {
+            summary.setText(session != null && session.isRunning() ? "waiting for samples..." : "not running");
+        } else {
+            int last = meter.size() - 1;
+            StringBuilder text = new StringBuilder(formatRatio(meter.getRatio(last)));
+            String[] counters = meter.getCounters();
+            for (int i = 0; i < counters.length; i++)
+                text.append("   ").append(formatMIPS(counters[i], meter.getMIPS(i, last)));
+            summary.setText(text.toString());
+        }
+
+        summary.getParent().layout();
+        canvas.redraw();
+    }
+
+    // Processor counters can only be looked up while the simulation is halted,
+    // so this is done once per session before it is run for the first time.
+    private void setupMeter() {
+        if (session == null) {
+            meter = null;
+            return;
+        }
+
+        String[] counters = session.getMonitor().getCounters();
+        if (configured != session && session.isConnected() && !session.isRunning()) {
+            try {
+                counters = SpeedMeter.findCounters(session.getTopLevelObjects());
+                session.getMonitor().setCounters(counters);
+                configured = session;
+            } catch (SessionException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+
+        if (meter == null || meter.getNumCounters() != counters.length)
+            meter = new SpeedMeter(counters, SpeedMeter.DEFAULT_HISTORY);
+    }
+
+    private void exportCSV() {
+        if (meter == null)
+            return;
+
+        FileDialog dialog = new FileDialog(canvas.getShell(), SWT.SAVE);
+        dialog.setFilterExtensions(new String[] { "*.csv", "*.*" });
+        dialog.setFileName("speed.csv");
+        dialog.setOverwrite(true);
+        String path = dialog.open();
+        if (path == null)
+            return;
+
+        try (Writer writer = new FileWriter(path)) {
+            meter.exportCSV(writer);
+        } catch (IOException e) {
+            MessageDialog.openError(canvas.getShell(), "Export failed", e.getMessage());
+        }
+    }
+
+    private Menu buildContextMenu(Canvas canvas) {
+        Menu menu = new Menu(canvas);
+
+        MenuItem exportItem = new MenuItem(menu, SWT.NONE);
+        exportItem.setText("Export CSV...");
+        exportItem.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                exportCSV();
+            }
+        });
+
+        MenuItem clearItem = new MenuItem(menu, SWT.NONE);
+        clearItem.setText("Clear History");
+        clearItem.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                if (meter != null)
+                    meter.clear();
+                updateView();
+            }
+        });
+
+        return menu;
+    }
+
+    @PostConstruct
+    public void createComposite(Composite parent) {
+        session = sessionService.getSession();
+
+        parent.setLayout(new GridLayout());
+
+        summary = new Label(parent, SWT.NONE);
+        summary.setFont(Resources.getMonoSpaceFont());
+        summary.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+
+        canvas = new Canvas(parent, SWT.BORDER | SWT.DOUBLE_BUFFERED);
+        canvas.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+        canvas.addPaintListener(paintListener);
+        canvas.setMenu(buildContextMenu(canvas));
+
+        setupMeter();
+        updateView();
+        canvas.getDisplay().timerExec(UPDATE_INTERVAL, updater);
+    }
+
+    @Focus
+    public void setFocus() {
+        canvas.setFocus();
+    }
+
+    @Inject
+    @Optional
+    public void sessionSelected(@UIEventTopic(ISessionService.TOPIC_SESSION_SELECTED) Session current) {
+        session = current;
+        meter = null;
+        setupMeter();
+        updateView();
+    }
+
+    @Inject
+    @Optional
+    public void sessionChanged(@UIEventTopic(ISessionService.TOPIC_SESSION_UPDATED) Session current) {
+        if (current != session || canvas.isDisposed())
+            return;
+
+        setupMeter();
+        updater.run(); // picks up the remaining samples, reschedules if running
+    }
+
+}
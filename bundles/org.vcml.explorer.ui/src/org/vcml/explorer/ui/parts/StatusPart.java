@@ -36,9 +36,12 @@ import org.vcml.explorer.ui.services.ISessionService;
 import org.vcml.session.Attribute;
 import org.vcml.session.Module;
 import org.vcml.session.Session;
+import org.vcml.session.TimeSample;
 
 public class StatusPart {
 
+    private static final int LIVE_UPDATE_INTERVAL = 100; // ms
+
     private Composite composite;
 
     private CLabel sessionLabel;
@@ -55,6 +58,31 @@ public class StatusPart {
     @Inject
     private ISessionService sessionService;
 
+    private TimeSample liveSample = new TimeSample();
+
+    // Shows the latest monitor sample while running, at most every 100ms.
+    private Runnable liveUpdater = new Runnable() {
+        @Override
+        public void run() {
+            if (composite == null || composite.isDisposed())
+                return;
+
+            Session session = sessionService.getSession();
+            if (session == null || !session.isRunning())
+                return;
+
+            if (session.getMonitor().getSamples().getLatest(liveSample)) {
+                timeLabel.setText(String.format("%.9fs", liveSample.getTime()));
+                cycleLabel.setText(Long.toString(liveSample.getDeltaCycle()));
+                timeLabel.pack();
+                cycleLabel.pack();
+                composite.pack();
+            }
+
+            composite.getDisplay().timerExec(LIVE_UPDATE_INTERVAL, this);
+        }
+    };
+
     private void updateSessionStatus() {
         Session session = sessionService.getSession();
         if (session == null) {
@@ -79,6 +107,7 @@ public class StatusPart {
             if (session.isRunning()) {
                 timeLabel.setText("running...");
                 cycleLabel.setText("running...");
+                composite.getDisplay().timerExec(LIVE_UPDATE_INTERVAL, liveUpdater);
             } else {
                 timeLabel.setText(String.format("%.9fs", session.getTime()));
                 cycleLabel.setText(Integer.toString(session.getDeltaCycle()));
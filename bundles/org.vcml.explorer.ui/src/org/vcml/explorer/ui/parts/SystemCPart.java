@@ -42,9 +42,12 @@ import org.eclipse.swt.widgets.Table;
 import org.vcml.explorer.ui.Resources;
 import org.vcml.explorer.ui.services.ISessionService;
 import org.vcml.session.Session;
+import org.vcml.session.TimeSample;
 
 public class SystemCPart {
 
+    private static final int LIVE_UPDATE_INTERVAL = 250; // ms
+
     private Session session;
 
     private TableViewer viewer;
@@ -53,8 +56,22 @@ public class SystemCPart {
 
     private TableViewerColumn descColumn;
 
+    private TimeSample liveSample = new TimeSample();
+
+    // Refreshes time and delta cycle from the session monitor while running.
+    private Runnable liveUpdater = new Runnable() {
+        @Override
+        public void run() {
+            if (viewer.getTable().isDisposed() || !session.isRunning())
+                return;
+
+            viewer.update(new Object[] { "Time", "Delta Cycle" }, null);
+            viewer.getTable().getDisplay().timerExec(LIVE_UPDATE_INTERVAL, this);
+        }
+    };
+
     private final String attributes[] = { "Name", "Host", "Port", "User", "Path", "SystemC Version", "VCML Version",
-            "Time", "Delta Cycle" };
+            "Time", "Delta Cycle", "Quantum" };
 
     private ColumnLabelProvider descriptionProvider = new ColumnLabelProvider() {
         @Override
@@ -75,9 +92,19 @@ public class SystemCPart {
             case "VCML Version":
                 return session.getVCMLVersion();
             case "Time":
+                if (session.isRunning())
+                    return session.getMonitor().getSamples().getLatest(liveSample)
+                            ? String.format("%.9fs (running)", liveSample.getTime())
+                            : "running...";
                 return String.format("%.9fs", session.getTime());
             case "Delta Cycle":
+                if (session.isRunning())
+                    return session.getMonitor().getSamples().getLatest(liveSample)
+                            ? Long.toString(liveSample.getDeltaCycle())
+                            : "running...";
                 return Integer.toString(session.getDeltaCycle());
+            case "Quantum":
+                return Double.isNaN(session.getQuantum()) ? "unknown" : String.format("%.9fs", session.getQuantum());
 
             default:
                 return "unknown";
@@ -130,6 +157,8 @@ public class SystemCPart {
         if (session == current) {
             viewer.refresh();
             viewer.getTable().setEnabled(session.isConnected() && !session.isRunning());
+            if (session.isRunning())
+                viewer.getTable().getDisplay().timerExec(LIVE_UPDATE_INTERVAL, liveUpdater);
         }
     }
 }
@@ -0,0 +1,208 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+
+package org.vcml.explorer.ui.parts;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.eclipse.e4.core.di.annotations.Optional;
+import org.eclipse.e4.ui.di.Focus;
+import org.eclipse.e4.ui.di.UIEventTopic;
+import org.eclipse.jface.layout.TableColumnLayout;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.ColumnWeightData;
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Menu;
+import org.eclipse.swt.widgets.MenuItem;
+import org.eclipse.swt.widgets.Table;
+
+import org.vcml.explorer.ui.Resources;
+import org.vcml.explorer.ui.services.ISessionService;
+import org.vcml.session.AttributeChange;
+import org.vcml.session.Session;
+
+public class WatchPart {
+
+    @Inject
+    private ISessionService sessionService;
+
+    private Session session;
+
+    private TableViewer viewer;
+
+    private TableViewerColumn nameColumn;
+
+    private TableViewerColumn valueColumn;
+
+    private Set<String> changed = new HashSet<String>();
+
+    private IStructuredContentProvider contentProvider = new IStructuredContentProvider() {
+        @Override
+        public Object[] getElements(Object inputElement) {
+            if (!(inputElement instanceof Session))
+                return new Object[0];
+            return ((Session) inputElement).getWatchList().getNames();
+        }
+    };
+
+    private ColumnLabelProvider nameProvider = new ColumnLabelProvider() {
+        @Override
+        public String getText(Object element) {
+            return (String) element;
+        }
+
+        @Override
+        public Font getFont(Object element) {
+            return Resources.getMonoSpaceFont();
+        }
+    };
+
+    private ColumnLabelProvider valueProvider = new ColumnLabelProvider() {
+        @Override
+        public String getText(Object element) {
+            String value = session.getWatchList().getValue((String) element);
+            return value != null ? value : "--";
+        }
+
+        @Override
+        public Font getFont(Object element) {
+            return Resources.getMonoSpaceFont();
+        }
+
+        @Override
+        public Color getForeground(Object element) {
+            if (changed.contains(element))
+                return Display.getDefault().getSystemColor(SWT.COLOR_RED);
+            return null;
+        }
+    };
+
+    private Menu buildContextMenu(Table table) {
+        Menu menu = new Menu(table);
+
+        MenuItem removeItem = new MenuItem(menu, SWT.NONE);
+        removeItem.setText("Remove Watch");
+        removeItem.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                if (session == null)
+                    return;
+                for (Object element : viewer.getStructuredSelection().toArray())
+                    sessionService.unwatchAttribute(session, (String) element);
+            }
+        });
+
+        MenuItem clearItem = new MenuItem(menu, SWT.NONE);
+        clearItem.setText("Remove All Watches");
+        clearItem.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                if (session == null)
+                    return;
+                for (String name : session.getWatchList().getNames())
+                    sessionService.unwatchAttribute(session, name);
+            }
+        });
+
+        return menu;
+    }
+
+    @PostConstruct
+    public void createComposite(Composite parent) {
+        session = sessionService.getSession();
+
+        parent.setLayout(new GridLayout());
+        Composite composite = new Composite(parent, SWT.NONE);
+        composite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+        viewer = new TableViewer(composite, SWT.BORDER | SWT.MULTI);
+        viewer.setContentProvider(contentProvider);
+
+        nameColumn = new TableViewerColumn(viewer, SWT.NONE);
+        nameColumn.getColumn().setText("Attribute");
+        nameColumn.setLabelProvider(nameProvider);
+
+        valueColumn = new TableViewerColumn(viewer, SWT.NONE);
+        valueColumn.getColumn().setText("Value");
+        valueColumn.setLabelProvider(valueProvider);
+
+        TableColumnLayout columnLayout = new TableColumnLayout();
+        columnLayout.setColumnData(nameColumn.getColumn(), new ColumnWeightData(2, 100, false));
+        columnLayout.setColumnData(valueColumn.getColumn(), new ColumnWeightData(1, 100, false));
+        composite.setLayout(columnLayout);
+
+        Table table = viewer.getTable();
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+        table.setMenu(buildContextMenu(table));
+
+        viewer.setInput(session);
+    }
+
+    @Focus
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+
+    @Inject
+    @Optional
+    public void sessionSelected(@UIEventTopic(ISessionService.TOPIC_SESSION_SELECTED) Session current) {
+        session = current;
+        changed.clear();
+        viewer.setInput(session);
+    }
+
+    @Inject
+    @Optional
+    public void watchChanged(@UIEventTopic(ISessionService.TOPIC_WATCH_CHANGED) Session current) {
+        if (current != session)
+            return;
+
+        // Only the rows of changed attributes are relabeled, unless the set of
+        // watched attributes itself has changed.
+        Set<String> previous = changed;
+        changed = new HashSet<String>();
+        for (AttributeChange change : session.getWatchList().getChanges())
+            changed.add(change.getName());
+
+        if (viewer.getTable().getItemCount() != session.getWatchList().getNames().length) {
+            viewer.refresh();
+            return;
+        }
+
+        previous.addAll(changed);
+        viewer.update(previous.toArray(), null);
+    }
+
+}
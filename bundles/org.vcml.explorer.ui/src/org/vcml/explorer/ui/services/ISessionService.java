@@ -20,9 +20,14 @@ package org.vcml.explorer.ui.services;
 
 import java.util.Collection;
 
+import org.vcml.session.Condition;
+import org.vcml.session.ConditionResult;
 import org.vcml.session.Module;
 import org.vcml.session.Session;
+import org.vcml.session.SessionController;
 import org.vcml.session.SessionException;
+import org.vcml.session.Watchpoint;
+import org.vcml.session.WatchpointResult;
 
 public interface ISessionService {
 
@@ -57,6 +62,14 @@ public interface ISessionService {
      */
     public static final String TOPIC_SESSION_ANY = TOPIC_SESSION_BASE + "/*";
 
+    /**
+     * Broadcasted with the session as data whenever an update of the simulation
+     * state found that watched attributes have changed their value. Kept apart
+     * from TOPIC_SESSION_ANY, so that receivers of session updates are not
+     * triggered a second time.
+     */
+    public static final String TOPIC_WATCH_CHANGED = "org/vcml/watch/changed";
+
     /**
      * Currently active (i.e. selected) session
      */
@@ -79,6 +92,24 @@ public interface ISessionService {
      */
     public Session addRemoteSession(String URI);
 
+    /**
+     * Opens a session snapshot file as offline session, connects and selects it.
+     * 
+     * @param path Location of the snapshot file.
+     * 
+     * @return offline session or <code>null</code> if the file cannot be read
+     */
+    public Session openSnapshot(String path);
+
+    /**
+     * Opens a raw or ELF memory image as offline session, connects and selects it.
+     * 
+     * @param path Location of the image file.
+     * 
+     * @return offline session or <code>null</code> if the file cannot be read
+     */
+    public Session openImage(String path);
+
     /**
      * Checks for new sessions.
      */
@@ -89,6 +120,30 @@ public interface ISessionService {
      */
     public void refreshSession(Session session);
 
+    /**
+     * Announces that a session has been changed without going through this
+     * service, e.g. by a batch operation. Must be called on the UI thread.
+     */
+    public void publishSession(Session session);
+
+    /**
+     * Returns the controller for batch operations on the listed sessions. The
+     * service publishes their results and removes sessions that have quit.
+     * 
+     * @return shared controller, will not be <code>null</code>
+     */
+    public SessionController getController();
+
+    /**
+     * Tells if a batch operation is in flight on a session. Busy sessions are
+     * left alone by this service and the actions that operate on them are
+     * disabled until the operation is done.
+     * 
+     * @param session session to check
+     * @return <code>true</code> if the session must not be touched
+     */
+    public boolean isBusy(Session session);
+
     /**
      * Returns the currently connected session or <code>null</code> if not
      * connected.
@@ -129,11 +184,80 @@ public interface ISessionService {
      */
     public void stepSimulation(Session session);
 
+    /**
+     * Steps the simulation several times, notifying listeners only once at the
+     * end. Stepping runs behind a cancelable progress dialog.
+     * 
+     * @param session session to step
+     * @param count   number of quanta to step
+     */
+    public void stepSimulation(Session session, int count);
+
+    /**
+     * Steps the simulation until the given amount of simulation time has
+     * passed, notifying listeners only once at the end. Stepping runs behind
+     * a cancelable progress dialog.
+     * 
+     * @param session  session to step
+     * @param duration simulation time to advance in seconds
+     */
+    public void runSimulationFor(Session session, double duration);
+
+    /**
+     * Steps the simulation until a condition holds or a step limit is reached,
+     * notifying listeners only once at the end. The condition is evaluated
+     * after every step and the simulation stops right at the first step at
+     * which it holds. Stepping runs behind a cancelable progress dialog.
+     * 
+     * @param session   session to step
+     * @param condition compiled condition on attribute values
+     * @param maxSteps  number of steps after which to give up
+     * @return the outcome of the run or <code>null</code> on error
+     */
+    public ConditionResult runSimulationUntil(Session session, Condition condition, long maxSteps);
+
+    /**
+     * Steps the simulation until watched memory changes or a step limit is
+     * reached, notifying listeners only once at the end. The simulation stops
+     * right after the step that changed the memory. Stepping runs behind a
+     * cancelable progress dialog.
+     * 
+     * @param session    session to step
+     * @param watchpoint memory ranges to watch
+     * @param maxSteps   number of steps after which to give up
+     * @return the outcome of the run or <code>null</code> on error
+     */
+    public WatchpointResult runSimulationUntilChanged(Session session, Watchpoint watchpoint, long maxSteps);
+
+    /**
+     * Sets the TLM global quantum of the session.
+     * 
+     * @param session session to configure
+     * @param quantum new quantum in seconds
+     */
+    public void setQuantum(Session session, double quantum);
+
     /**
      * Quits simulation and disconnects the session.
      */
     public void quitSimulation(Session session);
 
+    /**
+     * Adds an attribute to the watch list of the session and reads its value.
+     * 
+     * @param session session the attribute belongs to
+     * @param name    full hierarchical name of the attribute
+     */
+    public void watchAttribute(Session session, String name);
+
+    /**
+     * Removes an attribute from the watch list of the session.
+     * 
+     * @param session session the attribute belongs to
+     * @param name    full hierarchical name of the attribute
+     */
+    public void unwatchAttribute(Session session, String name);
+
     /**
      * Finds a module within the module hierarchy.
      */
@@ -18,22 +18,39 @@
 
 package org.vcml.explorer.ui.services;
 
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.services.events.IEventBroker;
 import org.eclipse.e4.ui.workbench.UIEvents;
 import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.swt.widgets.Display;
 
+import org.vcml.session.Condition;
+import org.vcml.session.ConditionResult;
+import org.vcml.session.MemoryImage;
 import org.vcml.session.Module;
 import org.vcml.session.Session;
+import org.vcml.session.SessionController;
+import org.vcml.session.SessionDiscovery;
 import org.vcml.session.SessionException;
+import org.vcml.session.SessionSnapshot;
+import org.vcml.session.SessionStatus;
+import org.vcml.session.SimulationTime;
+import org.vcml.session.Watchpoint;
+import org.vcml.session.WatchpointResult;
 
 public class SessionService implements ISessionService {
 
@@ -45,12 +62,87 @@ public class SessionService implements ISessionService {
 
     private Session current = null;
 
+    private SessionDiscovery discovery;
+
+    private SessionController controller = new SessionController();
+
+    // Batch operations finish on the I/O threads of the controller.
+    private SessionController.Listener controllerListener = new SessionController.Listener() {
+        @Override
+        public void operationDone(SessionStatus status) {
+            Display.getDefault().asyncExec(() -> {
+                Session session = status.getSession();
+                if (SessionController.OP_QUIT.equals(status.getOperation()) && !status.hasFailed())
+                    removeSession(session);
+                else
+                    publishSession(session);
+            });
+        }
+    };
+
+    // Discovery runs on its own threads, sessions are managed on the UI thread.
+    private SessionDiscovery.Listener discoveryListener = new SessionDiscovery.Listener() {
+        @Override
+        public void sessionAppeared(Session session) {
+            Display.getDefault().asyncExec(() -> addSession(session));
+        }
+
+        @Override
+        public void sessionDisappeared(Session session) {
+            Display.getDefault().asyncExec(() -> {
+                int index = sessions.indexOf(session);
+                if (index >= 0 && !sessions.get(index).isConnected())
+                    removeSession(sessions.get(index));
+            });
+        }
+    };
+
     @Inject
     public SessionService(IEclipseContext eclipseContext, IEventBroker eventBroker) {
         System.out.println("session service created");
         context = eclipseContext;
         broker = eventBroker;
-        refreshSessions();
+        discovery = new SessionDiscovery(Session.ANNOUNCE_DIR, discoveryListener);
+        discovery.start();
+        controller.addListener(controllerListener);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        discovery.stop();
+        controller.removeListener(controllerListener);
+        controller.shutdown();
+    }
+
+    // A stepping loop that polls for cancellation between bursts.
+    private interface SteppingLoop<T> {
+        T run(BooleanSupplier canceled) throws SessionException;
+    }
+
+    // Runs a stepping loop that may take long outside the UI thread behind a
+    // cancelable progress dialog and rethrows its errors on the UI thread.
+    private <T> T runWithProgress(String task, SteppingLoop<T> loop) throws SessionException {
+        List<T> result = new ArrayList<T>(1);
+        try {
+            new ProgressMonitorDialog(Display.getDefault().getActiveShell()).run(true, true, monitor -> {
+                monitor.beginTask(task, IProgressMonitor.UNKNOWN);
+                try {
+                    result.add(loop.run(monitor::isCanceled));
+                } catch (SessionException e) {
+                    throw new InvocationTargetException(e);
+                } finally {
+                    monitor.done();
+                }
+            });
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SessionException)
+                throw (SessionException) e.getCause();
+            throw new SessionException(task + " failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            return null;
+        }
+
+        return result.isEmpty() ? null : result.get(0);
     }
 
     private void updateSession(Session session, String topic) {
@@ -58,6 +150,11 @@ public class SessionService implements ISessionService {
         broker.post(UIEvents.REQUEST_ENABLEMENT_UPDATE_TOPIC, UIEvents.ALL_ELEMENT_ID);
     }
 
+    private void updateWatches(Session session) {
+        if (!session.getWatchList().getChanges().isEmpty())
+            broker.post(TOPIC_WATCH_CHANGED, session);
+    }
+
     private void addSession(Session session) {
         if (session == null || sessions.contains(session))
             return;
@@ -97,23 +194,44 @@ public class SessionService implements ISessionService {
     @Override
     public void refreshSession(Session session) {
         try {
-            if (session == null || !session.isConnected() || session.isRunning())
+            if (session == null || isBusy(session) || !session.isConnected() || session.isRunning())
                 return;
 
             session.refresh();
             updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
         } catch (SessionException e) {
             reportSessionError(session, e);
         }
     }
 
+    @Override
+    public void publishSession(Session session) {
+        if (session == null)
+            return;
+
+        updateSession(session, TOPIC_SESSION_UPDATED);
+        updateWatches(session);
+    }
+
+    @Override
+    public SessionController getController() {
+        return controller;
+    }
+
+    @Override
+    public boolean isBusy(Session session) {
+        return session != null && controller.isBusy(session);
+    }
+
     @Override
     public void connectSession(Session session) {
         try {
-            if (session.isConnected())
+            if (isBusy(session) || session.isConnected())
                 return;
             session.connect();
             updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
         } catch (SessionException e) {
             reportSessionError(session, e);
         }
@@ -122,7 +240,7 @@ public class SessionService implements ISessionService {
     @Override
     public void disconnectSession(Session session) {
         try {
-            if (session == null)
+            if (session == null || isBusy(session))
                 return;
             if (session.isRunning())
                 stopSimulation(session);
@@ -136,7 +254,7 @@ public class SessionService implements ISessionService {
     @Override
     public void startSimulation(Session session) {
         try {
-            if (session == null || session.isRunning())
+            if (session == null || isBusy(session) || session.isRunning())
                 return;
             if (!session.isConnected())
                 connectSession(session);
@@ -150,10 +268,11 @@ public class SessionService implements ISessionService {
     @Override
     public void stopSimulation(Session session) {
         try {
-            if (session == null || !session.isRunning() || !session.isConnected())
+            if (session == null || isBusy(session) || !session.isRunning() || !session.isConnected())
                 return;
             session.stopSimulation();
             updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
         } catch (SessionException e) {
             reportSessionError(session, e);
         }
@@ -162,12 +281,92 @@ public class SessionService implements ISessionService {
     @Override
     public void stepSimulation(Session session) {
         try {
-            if (session == null || session.isRunning())
+            if (session == null || isBusy(session) || session.isRunning())
                 return;
             if (!session.isConnected())
                 connectSession(session);
             session.stepSimulation();
             updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
+        } catch (SessionException e) {
+            reportSessionError(session, e);
+        }
+    }
+
+    @Override
+    public void stepSimulation(Session session, int count) {
+        try {
+            if (session == null || isBusy(session) || session.isRunning())
+                return;
+            if (!session.isConnected())
+                connectSession(session);
+            runWithProgress("Stepping " + count + " times", canceled -> session.stepSimulation(count, canceled));
+            updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
+        } catch (SessionException e) {
+            reportSessionError(session, e);
+        }
+    }
+
+    @Override
+    public void runSimulationFor(Session session, double duration) {
+        try {
+            if (session == null || isBusy(session) || session.isRunning())
+                return;
+            if (!session.isConnected())
+                connectSession(session);
+            runWithProgress("Running for " + SimulationTime.format(duration),
+                    canceled -> session.runSimulationFor(duration, canceled));
+            updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
+        } catch (SessionException e) {
+            reportSessionError(session, e);
+        }
+    }
+
+    @Override
+    public ConditionResult runSimulationUntil(Session session, Condition condition, long maxSteps) {
+        try {
+            if (session == null || isBusy(session) || session.isRunning())
+                return null;
+            if (!session.isConnected())
+                connectSession(session);
+            ConditionResult result = runWithProgress("Running until " + condition,
+                    canceled -> session.runSimulationUntil(condition, maxSteps, canceled));
+            updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
+            return result;
+        } catch (SessionException e) {
+            reportSessionError(session, e);
+            return null;
+        }
+    }
+
+    @Override
+    public WatchpointResult runSimulationUntilChanged(Session session, Watchpoint watchpoint, long maxSteps) {
+        try {
+            if (session == null || isBusy(session) || session.isRunning())
+                return null;
+            if (!session.isConnected())
+                connectSession(session);
+            WatchpointResult result = runWithProgress("Running until memory changes",
+                    canceled -> session.runSimulationUntilChanged(watchpoint, maxSteps, canceled));
+            updateSession(session, TOPIC_SESSION_UPDATED);
+            updateWatches(session);
+            return result;
+        } catch (SessionException e) {
+            reportSessionError(session, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void setQuantum(Session session, double quantum) {
+        try {
+            if (session == null || isBusy(session) || !session.isConnected() || session.isRunning())
+                return;
+            session.setQuantum(quantum);
+            updateSession(session, TOPIC_SESSION_UPDATED);
         } catch (SessionException e) {
             reportSessionError(session, e);
         }
@@ -176,7 +375,7 @@ public class SessionService implements ISessionService {
     @Override
     public void quitSimulation(Session session) {
         try {
-            if (session == null)
+            if (session == null || isBusy(session))
                 return;
             if (!session.isConnected())
                 connectSession(session);
@@ -190,10 +389,32 @@ public class SessionService implements ISessionService {
         }
     }
 
+    @Override
+    public void watchAttribute(Session session, String name) {
+        try {
+            if (session == null || isBusy(session))
+                return;
+            session.getWatchList().add(name);
+            if (session.isConnected() && !session.isRunning())
+                session.updateWatches();
+            broker.post(TOPIC_WATCH_CHANGED, session);
+        } catch (SessionException e) {
+            reportSessionError(session, e);
+        }
+    }
+
+    @Override
+    public void unwatchAttribute(Session session, String name) {
+        if (session == null || isBusy(session))
+            return;
+        session.getWatchList().remove(name);
+        broker.post(TOPIC_WATCH_CHANGED, session);
+    }
+
     @Override
     public Module findModule(Session session, String name) {
         try {
-            if (session == null || !session.isConnected() || session.isRunning())
+            if (session == null || isBusy(session) || !session.isConnected() || session.isRunning())
                 return null;
             return session.findObject(name);
         } catch (SessionException e) {
@@ -222,6 +443,11 @@ public class SessionService implements ISessionService {
 
     @Override
     public void refreshSessions() {
+        if (discovery.isActive()) {
+            discovery.requestRescan();
+            return;
+        }
+
         List<Session> available = Session.getAvailableSessions();
         for (Session session : available)
             addSession(session);
@@ -242,4 +468,50 @@ public class SessionService implements ISessionService {
         }
     }
 
+    // Offline sessions are keyed by their file, looked up before mapping it.
+    private Session findSession(Path file) {
+        for (Session session : sessions)
+            if (session.getURI().equals(file.toString()))
+                return session;
+        return null;
+    }
+
+    @Override
+    public Session openSnapshot(String path) {
+        try {
+            Path file = Paths.get(path);
+            Session session = findSession(file);
+            if (session == null) {
+                session = new Session(new SessionSnapshot(file));
+                addSession(session);
+            }
+
+            setSession(session);
+            connectSession(session);
+            return session;
+        } catch (SessionException e) {
+            MessageDialog.openError(null, "Session management", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public Session openImage(String path) {
+        try {
+            Path file = Paths.get(path);
+            Session session = findSession(file);
+            if (session == null) {
+                session = new Session(new MemoryImage(file));
+                addSession(session);
+            }
+
+            setSession(session);
+            connectSession(session);
+            return session;
+        } catch (SessionException e) {
+            MessageDialog.openError(null, "Session management", e.getMessage());
+            return null;
+        }
+    }
+
 }
@@ -19,14 +19,22 @@
 package org.vcml.explorer.ui.terminal;
 
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.Arrays;
 
 import org.eclipse.swt.widgets.Display;
 import org.vcml.explorer.ui.services.ISessionService;
 import org.vcml.session.Command;
+import org.vcml.session.Condition;
+import org.vcml.session.ConditionResult;
 import org.vcml.session.Module;
 import org.vcml.session.Session;
 import org.vcml.session.SessionException;
+import org.vcml.session.SessionSnapshot;
+import org.vcml.session.SimulationTime;
+import org.vcml.session.StepTrace;
+import org.vcml.session.Watchpoint;
+import org.vcml.session.WatchpointResult;
 
 public class SessionTerminal extends CommandTerminal {
 
@@ -115,15 +123,116 @@ public class SessionTerminal extends CommandTerminal {
         });
 
         addCommand("s", (String[] args) -> {
+            int count = 1;
+            if (args.length > 1) {
+                try {
+                    count = Integer.parseInt(args[1]);
+                } catch (NumberFormatException e) {
+                    out.println("invalid step count '" + args[1] + "'");
+                    return;
+                }
+            }
+
+            final int steps = count;
             Display.getDefault().syncExec(new Runnable() {
                 @Override
                 public void run() {
-                    service.stepSimulation(session);
+                    if (steps == 1)
+                        service.stepSimulation(session);
+                    else
+                        service.stepSimulation(session, steps);
                 }
             });
 
         });
 
+        addCommand("run", (String[] args) -> {
+            double duration = args.length > 1 ? SimulationTime.parse(args[1]) : Double.NaN;
+            if (!(duration > 0.0)) {
+                out.println("usage: run <duration>, e.g. run 10ms");
+                return;
+            }
+
+            Display.getDefault().syncExec(new Runnable() {
+                @Override
+                public void run() {
+                    service.runSimulationFor(session, duration);
+                }
+            });
+
+            out.println("simulation time " + SimulationTime.format(session.getTime()));
+        });
+
+        addCommand("until", (String[] args) -> {
+            Condition condition;
+            try {
+                condition = Condition.compile(String.join(" ", Arrays.copyOfRange(args, 1, args.length)));
+            } catch (ParseException e) {
+                out.println(e.getMessage());
+                out.println("usage: until <condition>, e.g. until system.cpu.irq_count > 5");
+                return;
+            }
+
+            ConditionResult[] result = new ConditionResult[1];
+            Display.getDefault().syncExec(new Runnable() {
+                @Override
+                public void run() {
+                    result[0] = service.runSimulationUntil(session, condition, Session.DEFAULT_MAX_STEPS);
+                }
+            });
+
+            if (result[0] != null)
+                out.println(result[0]);
+        });
+
+        addCommand("watch", (String[] args) -> {
+            SessionSnapshot.Range[] ranges = new SessionSnapshot.Range[args.length - 1];
+            try {
+                for (int i = 1; i < args.length; i++)
+                    ranges[i - 1] = SessionSnapshot.Range.parse(args[i]);
+            } catch (SessionException e) {
+                out.println(e.getMessage());
+                ranges = new SessionSnapshot.Range[0];
+            }
+
+            if (ranges.length == 0) {
+                out.println("usage: watch <range>..., e.g. watch system.mem:0x1000+0x100");
+                return;
+            }
+
+            Watchpoint watchpoint = new Watchpoint(ranges);
+            WatchpointResult[] result = new WatchpointResult[1];
+            Display.getDefault().syncExec(new Runnable() {
+                @Override
+                public void run() {
+                    result[0] = service.runSimulationUntilChanged(session, watchpoint, Session.DEFAULT_MAX_STEPS);
+                }
+            });
+
+            if (result[0] != null)
+                out.println(result[0]);
+        });
+
+        addCommand("trace", (String[] args) -> {
+            StepTrace trace = session.getStepTrace();
+            if (trace == null || trace.isEmpty()) {
+                out.println("no samples recorded, watch attributes before stepping");
+                return;
+            }
+
+            StringBuilder header = new StringBuilder(String.format("%-16s", "time"));
+            for (String name : trace.getNames())
+                header.append(' ').append(name);
+            out.println(header);
+
+            for (int i = 0; i < trace.size(); i++) {
+                StringBuilder line = new StringBuilder(String.format("%-16.9f", trace.getTime(i)));
+                for (int col = 0; col < trace.getNames().length; col++)
+                    line.append(' ').append(trace.getValue(i, col));
+                out.println(line);
+            }
+        });
+
         addCommand("c", (String[] args) -> {
 
             Display.getDefault().syncExec(new Runnable() {
@@ -157,7 +266,11 @@ public class SessionTerminal extends CommandTerminal {
             out.println(String.format("%-10s : %s", "ls", "list modules"));
             out.println(String.format("%-10s : %s", "cd <name>", "select module <name>"));
             out.println(String.format("%-10s : %s", "cd ..", "select parent module"));
-            out.println(String.format("%-10s : %s", "s", "single step simulation"));
+            out.println(String.format("%-10s : %s", "s [n]", "step simulation once or n times"));
+            out.println(String.format("%-10s : %s", "run <t>", "step simulation for time t, e.g. 10ms"));
+            out.println(String.format("%-10s : %s", "until <c>", "step simulation until condition c holds"));
+            out.println(String.format("%-10s : %s", "watch <r>", "step simulation until memory ranges r change"));
+            out.println(String.format("%-10s : %s", "trace", "show watches sampled during last steps"));
             out.println(String.format("%-10s : %s", "c", "continue simulation"));
             if (current == null)
                 return;
@@ -0,0 +1,200 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryCacheTest {
+
+    private static final String MODULE = "sys.mem";
+
+    private static final int PAGES = 4;
+
+    /**
+     * Serves a small memory with show and hash commands and records the
+     * requests it has seen.
+     */
+    private static class FakeProtocol extends RemoteSerialProtocol {
+
+        private final byte[] memory = new byte[PAGES * MemoryCache.PAGE_SIZE];
+
+        private final List<String> requests = new ArrayList<String>();
+
+        private static String hash(byte[] data, int offset, int length) {
+            CRC32 crc = new CRC32();
+            crc.update(data, offset, length);
+            return Long.toHexString(crc.getValue());
+        }
+
+        private String reply(String request) {
+            requests.add(request);
+            String[] args = request.split(",");
+            switch (args[0]) {
+            case VERS:
+                return "OK,sysc:test,vcml:test";
+
+            case TIME:
+            case DCYC:
+                return "OK,0";
+
+            case INFO:
+                return "OK,kind:" + Module.KIND_VCML_MEMORY + ",cmd:" + MemoryCache.CMD_SHOW + ":2:show memory,cmd:"
+                        + MemoryCache.CMD_HASH + ":2:hash memory";
+
+            case EXEC:
+                int start = Integer.parseInt(args[3]);
+                int end = Integer.parseInt(args[4]);
+                if (args[2].equals(MemoryCache.CMD_HASH))
+                    return "OK," + hash(memory, start, end - start);
+                byte[] data = new byte[end - start];
+                System.arraycopy(memory, start, data, 0, data.length);
+                return "OK," + MemoryCache.format(start, data);
+
+            default:
+                return "ERROR,not supported";
+            }
+        }
+
+        int count(String command) {
+            int n = 0;
+            for (String request : requests)
+                if (request.startsWith(EXEC + "," + MODULE + "," + command + ","))
+                    n++;
+            return n;
+        }
+
+        @Override
+        public synchronized Response command(String... args) throws SessionException {
+            String request = join(args);
+            return new Response(request, reply(request));
+        }
+
+        @Override
+        synchronized String[] exchange(String[] requests) throws SessionException {
+            String[] replies = new String[requests.length];
+            for (int i = 0; i < requests.length; i++)
+                replies[i] = reply(requests[i]);
+            return replies;
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+
+    }
+
+    private FakeProtocol protocol;
+
+    private Session session;
+
+    private MemoryCache cache;
+
+    private long[] addresses;
+
+    @Before
+    public void setUp() throws SessionException {
+        protocol = new FakeProtocol();
+        session = new Session("localhost:1") {
+            @Override
+            RemoteSerialProtocol createProtocol() {
+                return protocol;
+            }
+        };
+        session.connect();
+        cache = session.getMemoryCache();
+
+        addresses = new long[PAGES];
+        for (int i = 0; i < PAGES; i++)
+            addresses[i] = (long) i * MemoryCache.PAGE_SIZE;
+    }
+
+    private void assertPagesMatchMemory() throws SessionException {
+        for (long address : addresses) {
+            MemoryCache.Page page = cache.getPage(MODULE, address);
+            assertNotNull(page);
+            byte[] expected = new byte[MemoryCache.PAGE_SIZE];
+            System.arraycopy(protocol.memory, (int) address, expected, 0, expected.length);
+            assertArrayEquals(expected, page.getData());
+            assertEquals(FakeProtocol.hash(expected, 0, expected.length), page.getHash());
+        }
+    }
+
+    @Test
+    public void unchangedPagesAreOnlyRestamped() throws SessionException {
+        cache.fetch(MODULE, addresses);
+        assertEquals(PAGES, protocol.count(MemoryCache.CMD_SHOW));
+
+        session.refresh();
+        cache.fetch(MODULE, addresses);
+        assertEquals(PAGES, protocol.count(MemoryCache.CMD_SHOW));
+        assertEquals(PAGES, cache.getUnchanged());
+        assertPagesMatchMemory();
+    }
+
+    @Test
+    public void refetchedPagesKeepTheirOwnHash() throws SessionException {
+        cache.fetch(MODULE, addresses);
+
+        // Pages 0 and 2 stay, pages 1 and 3 change and must be transferred
+        // with their own hashes, not those of the restamped pages.
+        protocol.memory[1 * MemoryCache.PAGE_SIZE] = 1;
+        protocol.memory[3 * MemoryCache.PAGE_SIZE + 7] = 3;
+        session.refresh();
+        cache.fetch(MODULE, addresses);
+        assertEquals(PAGES + 2, protocol.count(MemoryCache.CMD_SHOW));
+        assertEquals(2, cache.getUnchanged());
+        assertPagesMatchMemory();
+        assertTrue(cache.getPage(MODULE, addresses[3]).isChanged(7));
+
+        // With correct hashes nothing needs to be transferred again.
+        session.refresh();
+        cache.fetch(MODULE, addresses);
+        assertEquals(PAGES + 2, protocol.count(MemoryCache.CMD_SHOW));
+        assertEquals(2 + PAGES, cache.getUnchanged());
+        assertPagesMatchMemory();
+    }
+
+    @Test
+    public void indexOfLocatesChangedByte() {
+        byte[] data = new byte[40];
+        String before = MemoryCache.format(0x1000, data);
+        data[21] = 0x5a;
+        String after = MemoryCache.format(0x1000, data);
+
+        int pos = 0;
+        while (before.charAt(pos) == after.charAt(pos))
+            pos++;
+
+        assertEquals(21, MemoryCache.indexOf(after, pos));
+        assertEquals(0, MemoryCache.indexOf(after, 0));
+        assertEquals(-1, MemoryCache.indexOf(after, after.length()));
+    }
+
+}
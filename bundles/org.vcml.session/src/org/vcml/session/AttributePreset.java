@@ -0,0 +1,164 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes attribute presets: plain text files holding one
+ * <tt>name = value</tt> line per attribute. Both directions stream, so presets
+ * never have to be held in memory as a whole.
+ */
+public class AttributePreset {
+
+    public static final String COMMENT = "#";
+
+    public static final String SEPARATOR = " = ";
+
+    /**
+     * Number of SETA commands sent to the session per burst.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '\\':
+                builder.append("\\\\");
+                break;
+            case '\n':
+                builder.append("\\n");
+                break;
+            case '\r':
+                builder.append("\\r");
+                break;
+            default:
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String unescape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i == value.length() - 1) {
+                builder.append(c);
+                continue;
+            }
+
+            c = value.charAt(++i);
+            builder.append(c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+        }
+        return builder.toString();
+    }
+
+    private static int write(Module module, Writer writer) throws IOException {
+        int count = 0;
+        for (Attribute attr : module.getAttributes()) {
+            if (!attr.isEditable())
+                continue;
+            writer.write(attr.getName());
+            writer.write(SEPARATOR);
+            writer.write(escape(attr.getValue()));
+            writer.write('\n');
+            count++;
+        }
+
+        for (Module child : module.getChildren())
+            count += write(child, writer);
+        return count;
+    }
+
+    /**
+     * Writes all editable attributes of a module and its children.
+     * @param root      Root of the subtree to save
+     * @param writer    Destination of the preset
+     * @return          Number of attributes written
+     */
+    public static int save(Module root, Writer writer) throws IOException {
+        writer.write(COMMENT + " attributes of " + (root.isRoot() ? "<root>" : root.getName()) + "\n");
+        int count = write(root, writer);
+        writer.flush();
+        return count;
+    }
+
+    public static int save(Module root, File file) throws IOException {
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            return save(root, writer);
+        }
+    }
+
+    /**
+     * Applies a preset to a session. Attributes are sent in bursts of
+     * {@link #BATCH_SIZE} SETA commands while the preset is being read.
+     * @param session   Session to apply the preset to
+     * @param reader    Source of the preset
+     * @return          Names of attributes the session refused to set
+     */
+    public static List<String> apply(Session session, Reader reader) throws IOException, SessionException {
+        List<String> failed = new ArrayList<String>();
+        Map<String, String> batch = new LinkedHashMap<String, String>();
+        BufferedReader lines = new BufferedReader(reader);
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith(COMMENT))
+                continue;
+
+            int idx = line.indexOf(SEPARATOR);
+            if (idx < 0)
+                throw new IOException("Malformed preset line: " + line);
+
+            batch.put(line.substring(0, idx), unescape(line.substring(idx + SEPARATOR.length())));
+            if (batch.size() >= BATCH_SIZE) {
+                failed.addAll(session.setAttributes(batch));
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty())
+            failed.addAll(session.setAttributes(batch));
+        return failed;
+    }
+
+    public static List<String> apply(Session session, File file) throws IOException, SessionException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return apply(session, reader);
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A predicate over attribute values, such as
+ * <tt>sys.cpu.irq_count &gt; 5 &amp;&amp; sys.uart.tx != 0</tt>. Conditions
+ * are compiled once into a tree of terms with constants already converted,
+ * so evaluating them after each step only parses the attribute values.
+ * Supported are the comparisons == != &lt; &lt;= &gt; &gt;=, combined with
+ * &amp;&amp;, || and parentheses. Bare words are attribute names; numbers,
+ * true/false and quoted strings are constants. A lone operand holds if it
+ * is non-zero, true or a non-empty string.
+ */
+public class Condition {
+
+    private static final Pattern TOKEN = Pattern
+            .compile("\\s*(\"(?:[^\"\\\\]|\\\\.)*\"|==|!=|<=|>=|<|>|&&|\\|\\||\\(|\\)|[^\\s()=!<>&|\"]+)");
+
+    private interface Term {
+        boolean test(String[] values);
+    }
+
+    // A constant or the value of an attribute, converted on demand.
+    private static class Operand {
+        int column = -1;
+        String text;
+        boolean isLong;
+        long number;
+        boolean isDouble;
+        double real;
+
+        void set(String value) {
+            text = value;
+            isLong = false;
+            isDouble = false;
+            if (value == null)
+                return;
+
+            try {
+                if (value.startsWith("0x") || value.startsWith("0X"))
+                    number = Long.parseUnsignedLong(value.substring(2), 16);
+                else
+                    number = Long.parseLong(value);
+                real = number;
+                isLong = isDouble = true;
+                return;
+            } catch (NumberFormatException e) {
+                // not an integer
+            }
+
+            try {
+                real = Double.parseDouble(value);
+                isDouble = true;
+            } catch (NumberFormatException e) {
+                // not a number
+            }
+        }
+
+        Operand resolve(String[] values, Operand scratch) {
+            if (column < 0)
+                return this;
+            scratch.set(values[column]);
+            return scratch;
+        }
+
+        boolean isTrue() {
+            if (isDouble)
+                return real != 0.0;
+            return text != null && !text.isEmpty() && !text.equals("false");
+        }
+    }
+
+    private static class Comparison implements Term {
+        String op;
+        Operand left;
+        Operand right;
+        Operand leftValue = new Operand();
+        Operand rightValue = new Operand();
+
+        @Override
+        public boolean test(String[] values) {
+            Operand l = left.resolve(values, leftValue);
+            if (op == null)
+                return l.isTrue();
+
+            Operand r = right.resolve(values, rightValue);
+            if (l.text == null || r.text == null)
+                return false; // attribute could not be read
+
+            int cmp;
+            if (l.isLong && r.isLong)
+                cmp = Long.compare(l.number, r.number);
+            else if (l.isDouble && r.isDouble)
+                cmp = Double.compare(l.real, r.real);
+            else
+                cmp = l.text.compareTo(r.text);
+
+            switch (op) {
+            case "==":
+                return cmp == 0;
+            case "!=":
+                return cmp != 0;
+            case "<":
+                return cmp < 0;
+            case "<=":
+                return cmp <= 0;
+            case ">":
+                return cmp > 0;
+            default:
+                return cmp >= 0;
+            }
+        }
+    }
+
+    private static class Junction implements Term {
+        boolean and;
+        List<Term> terms = new ArrayList<Term>();
+
+        @Override
+        public boolean test(String[] values) {
+            for (Term term : terms)
+                if (term.test(values) != and)
+                    return !and;
+            return and;
+        }
+    }
+
+    private String text;
+
+    private List<String> attributes = new ArrayList<String>();
+
+    private List<String> tokens = new ArrayList<String>();
+
+    private int pos = 0;
+
+    private Term root;
+
+    private String peek() {
+        return pos < tokens.size() ? tokens.get(pos) : null;
+    }
+
+    private boolean isOperator(String token) {
+        return token != null && token.matches("==|!=|<=|>=|<|>");
+    }
+
+    private Operand parseOperand() throws ParseException {
+        String token = peek();
+        if (token == null || isOperator(token) || token.matches("&&|\\|\\||\\(|\\)"))
+            throw new ParseException("operand expected in '" + text + "'", pos);
+        pos++;
+
+        Operand operand = new Operand();
+        if (token.startsWith("\"")) {
+            operand.set(token.substring(1, token.length() - 1).replaceAll("\\\\(.)", "$1"));
+            operand.isLong = operand.isDouble = false; // quoted means string
+            return operand;
+        }
+
+        operand.set(token);
+        if (operand.isDouble || token.equals("true") || token.equals("false"))
+            return operand;
+
+        int column = attributes.indexOf(token);
+        if (column < 0) {
+            column = attributes.size();
+            attributes.add(token);
+        }
+
+        operand.column = column;
+        operand.text = null;
+        return operand;
+    }
+
+    private Term parsePrimary() throws ParseException {
+        if ("(".equals(peek())) {
+            pos++;
+            Term term = parseJunction(false);
+            if (!")".equals(peek()))
+                throw new ParseException("')' expected in '" + text + "'", pos);
+            pos++;
+            return term;
+        }
+
+        Comparison comparison = new Comparison();
+        comparison.left = parseOperand();
+        if (isOperator(peek())) {
+            comparison.op = tokens.get(pos++);
+            comparison.right = parseOperand();
+        }
+
+        return comparison;
+    }
+
+    private Term parseJunction(boolean and) throws ParseException {
+        Junction junction = new Junction();
+        junction.and = and;
+        String separator = and ? "&&" : "||";
+
+        junction.terms.add(and ? parsePrimary() : parseJunction(true));
+        while (separator.equals(peek())) {
+            pos++;
+            junction.terms.add(and ? parsePrimary() : parseJunction(true));
+        }
+
+        return junction.terms.size() == 1 ? junction.terms.get(0) : junction;
+    }
+
+    private Condition(String text) throws ParseException {
+        this.text = text;
+
+        Matcher matcher = TOKEN.matcher(text);
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            tokens.add(matcher.group(1));
+            end = matcher.end();
+        }
+
+        if (!text.substring(end).trim().isEmpty())
+            throw new ParseException("invalid character in '" + text + "'", end);
+
+        root = parseJunction(false);
+        if (pos != tokens.size())
+            throw new ParseException("unexpected '" + peek() + "' in '" + text + "'", pos);
+        if (attributes.isEmpty())
+            throw new ParseException("condition does not refer to any attribute", 0);
+    }
+
+    /**
+     * Compiles a condition.
+     * @param text  Condition, e.g. <tt>sys.cpu.irq_count &gt;= 10</tt>
+     * @return      The compiled condition
+     * @throws ParseException if the text is not a valid condition
+     */
+    public static Condition compile(String text) throws ParseException {
+        return new Condition(text);
+    }
+
+    /**
+     * Returns the names of the attributes the condition depends on, in the
+     * order their values are expected by {@link #test(String[])}.
+     */
+    public String[] getAttributes() {
+        return attributes.toArray(new String[attributes.size()]);
+    }
+
+    /**
+     * Evaluates the condition. Not thread-safe, conversion buffers are reused.
+     * @param values    Attribute values, <tt>null</tt> if unreadable
+     */
+    public boolean test(String[] values) {
+        return root.test(values);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
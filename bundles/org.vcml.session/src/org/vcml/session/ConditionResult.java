@@ -0,0 +1,109 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+/**
+ * Outcome of running a simulation until a condition holds.
+ */
+public class ConditionResult {
+
+    private Condition condition;
+
+    private boolean satisfied;
+
+    private boolean canceled;
+
+    private long step;
+
+    private long steps;
+
+    private int roundTrips;
+
+    private double time;
+
+    public ConditionResult(Condition condition, boolean satisfied, boolean canceled, long step, long steps,
+            int roundTrips, double time) {
+        this.condition = condition;
+        this.satisfied = satisfied;
+        this.canceled = canceled;
+        this.step = step;
+        this.steps = steps;
+        this.roundTrips = roundTrips;
+        this.time = time;
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+
+    /**
+     * Returns <tt>false</tt> if the step limit was reached first.
+     */
+    public boolean isSatisfied() {
+        return satisfied;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the run was canceled before the condition held.
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Returns the first step after which the condition held, counting from
+     * one, or zero if it never did.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the number of steps simulated, equal to the satisfying step if
+     * the condition held.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the number of request/reply round trips spent, taking the
+     * pipeline depth of the connection into account.
+     */
+    public int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * Returns the simulation time at which the run stopped.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        if (!satisfied)
+            return String.format("%s after %d steps at %s (%d round trips)",
+                    canceled ? "canceled" : "step limit reached", steps, SimulationTime.format(time), roundTrips);
+        return String.format("'%s' holds after step %d at %s (%d round trips)", condition, step,
+                SimulationTime.format(time), roundTrips);
+    }
+
+}
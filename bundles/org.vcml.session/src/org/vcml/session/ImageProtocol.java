@@ -0,0 +1,139 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+/**
+ * Answers requests of an offline session from a {@link MemoryImage}. The
+ * image appears as a single memory at the top of the hierarchy that can be
+ * shown but not changed; the simulation cannot be run.
+ */
+class ImageProtocol extends RemoteSerialProtocol {
+
+    public static final String ERROR_READ_ONLY = "ERROR,memory image is read-only";
+
+    public static final String ERROR_NOT_SUPPORTED = "ERROR,not supported by memory images";
+
+    private MemoryImage image;
+
+    private String name;
+
+    public ImageProtocol(MemoryImage image, String name) {
+        this.image = image;
+        this.name = name;
+    }
+
+    private String readMemory(String[] args) {
+        if (args.length != 5 || !args[1].equals(name) || !args[2].equals(MemoryCache.CMD_SHOW))
+            return ERROR_NOT_SUPPORTED;
+
+        try {
+            long start = Long.parseUnsignedLong(args[3]);
+            long end = Long.parseUnsignedLong(args[4]);
+            if (end <= start || end - start > Integer.MAX_VALUE)
+                return "ERROR,invalid range";
+
+            byte[] data = new byte[(int) (end - start)];
+            if (!image.read(start, data, 0, data.length))
+                return "ERROR,address out of range";
+            return "OK," + MemoryCache.format(start, data);
+        } catch (NumberFormatException e) {
+            return "ERROR,invalid range";
+        }
+    }
+
+    private String reply(String request) {
+        String[] args = request.split(",");
+        switch (args[0]) {
+        case INFO:
+            if (args.length < 2 || args[1].isEmpty())
+                return "OK,kind:sc_object,child:" + name;
+            if (!args[1].equals(name))
+                return "ERROR,no such object";
+            return "OK,kind:" + Module.KIND_VCML_MEMORY + ",attr:" + name + ".size,cmd:"
+                    + MemoryCache.CMD_SHOW + ":2:show memory";
+
+        case GETA:
+            if (args.length < 2 || !args[1].equals(name + ".size"))
+                return "ERROR,no such attribute";
+            return "OK,value:" + image.getSize() + ",size:8,num:1";
+
+        case EXEC:
+            return readMemory(args);
+
+        case TIME:
+            return "OK,0";
+
+        case DCYC:
+            return "OK,0";
+
+        case VERS:
+            return "OK,sysc:none,vcml:image";
+
+        case STEP:
+        case CONT:
+        case SETA:
+        case WRGQ:
+        case QUIT:
+            return ERROR_READ_ONLY;
+
+        default:
+            return ERROR_NOT_SUPPORTED;
+        }
+    }
+
+    @Override
+    public void setTimeout(int ms) {
+        // nothing to wait for
+    }
+
+    @Override
+    public synchronized void send_char(int val) throws SessionException {
+        throw new SessionException("Memory image is read-only");
+    }
+
+    @Override
+    public synchronized void send(String message) throws SessionException {
+        throw new SessionException("Memory image is read-only");
+    }
+
+    @Override
+    public synchronized String recv() throws SessionException {
+        throw new SessionException("Memory image is read-only");
+    }
+
+    @Override
+    public synchronized Response command(String... args) throws SessionException {
+        String request = join(args);
+        return new Response(request, reply(request));
+    }
+
+    @Override
+    synchronized String[] exchange(String[] requests) throws SessionException {
+        String[] replies = new String[requests.length];
+        for (int i = 0; i < requests.length; i++)
+            replies[i] = reply(requests[i]);
+        return replies;
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released with the image
+    }
+
+}
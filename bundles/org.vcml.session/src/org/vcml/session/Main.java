@@ -0,0 +1,532 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line runner for scripting sessions without the workbench. Reads
+ * one command per line from a script, the -c option or stdin and prints one
+ * JSON object per command, e.g.
+ * 
+ * <pre>
+ * java -jar org.vcml.session.jar -c "step 100; get system.cpu.pc" localhost:44444
+ * </pre>
+ */
+public class Main {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java -jar org.vcml.session.jar [options] [host:port] [script]",
+            "  -c <commands>  run ';' separated commands instead of a script",
+            "  -k             keep going after a command failed",
+            "  -t             print plain text instead of JSON lines",
+            "  -l             list available sessions and exit",
+            "  -g <port>      share the session through a local gateway on port",
+            "                 (0 picks a free one) instead of running commands",
+            "commands:",
+            "  connect [host:port]        connect to a session",
+            "  open <file>                open a snapshot as offline session",
+            "  image <file>               open a raw or ELF memory image",
+            "  disconnect                 disconnect from the session",
+            "  time                       report time, delta cycle and quantum",
+            "  step [n]                   step n quanta (default 1)",
+            "  run <duration>             step for a duration, e.g. 10ms",
+            "  until <condition>          step until a condition holds",
+            "  watch <range>...           step until memory changes, e.g. mem:0+0x100",
+            "  quantum [duration]         read or set the global quantum",
+            "  get <attribute>...         read attributes",
+            "  set <attribute> <value>    write an attribute",
+            "  exec <module> <cmd> [args] execute a module command",
+            "  dump [module]              list modules, attributes and commands",
+            "  snapshot <file> [range...] save a snapshot, ranges as module:start+len",
+            "  quit                       quit the simulation",
+            "lines starting with # are ignored");
+
+    private PrintStream out;
+
+    private boolean text = false;
+
+    private boolean keepGoing = false;
+
+    private Session session = null;
+
+    private String defaultURI = null;
+
+    private int lineNumber = 0;
+
+    private static String quote(String str) {
+        if (str == null)
+            return "null";
+
+        StringBuilder sb = new StringBuilder("\"");
+        for (char ch : str.toCharArray()) {
+            switch (ch) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (ch < 0x20)
+                    sb.append(String.format("\\u%04x", (int) ch));
+                else
+                    sb.append(ch);
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+
+    private static String toJSON(Object value) {
+        if (value == null)
+            return "null";
+        if (value instanceof Boolean || value instanceof Integer || value instanceof Long)
+            return value.toString();
+        if (value instanceof Double)
+            return Double.isNaN((Double) value) ? "null" : value.toString();
+        if (value instanceof Map) {
+            StringBuilder sb = new StringBuilder("{");
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (sb.length() > 1)
+                    sb.append(',');
+                sb.append(quote(entry.getKey().toString())).append(':').append(toJSON(entry.getValue()));
+            }
+            return sb.append('}').toString();
+        }
+        if (value instanceof List) {
+            StringBuilder sb = new StringBuilder("[");
+            for (Object item : (List<?>) value) {
+                if (sb.length() > 1)
+                    sb.append(',');
+                sb.append(toJSON(item));
+            }
+            return sb.append(']').toString();
+        }
+
+        return quote(value.toString());
+    }
+
+    private void print(Map<String, Object> result) {
+        if (!text) {
+            out.println(toJSON(result));
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            if (entry.getKey().equals("line"))
+                continue;
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+
+        out.println(sb);
+    }
+
+    private Session getSession() throws SessionException {
+        if (session == null || !session.isConnected())
+            throw new SessionException("not connected");
+        return session;
+    }
+
+    private void addTime(Map<String, Object> result) {
+        if (session != null && session.isConnected()) {
+            result.put("time", session.getTime());
+            result.put("delta", session.getDeltaCycle());
+        }
+    }
+
+    private static void need(String[] args, int count) throws SessionException {
+        if (args.length < count)
+            throw new SessionException("missing arguments for '" + args[0] + "'");
+    }
+
+    private void dump(Module module, List<Object> modules) {
+        Map<String, Object> entry = new LinkedHashMap<String, Object>();
+        entry.put("name", module.getName());
+        entry.put("kind", module.getKind());
+
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        for (Attribute attr : module.getAttributes())
+            if (attr.isEditable())
+                attributes.put(attr.getBaseName(), attr.getValue());
+        entry.put("attributes", attributes);
+
+        List<Object> commands = new ArrayList<Object>();
+        for (Command command : module.getCommands())
+            commands.add(command.getName());
+        entry.put("commands", commands);
+        modules.add(entry);
+
+        for (Module child : module.getChildren())
+            dump(child, modules);
+    }
+
+    private void execute(String[] args, Map<String, Object> result) throws SessionException {
+        switch (args[0]) {
+        case "connect":
+            String uri = args.length > 1 ? args[1] : defaultURI;
+            if (uri == null)
+                throw new SessionException("no session given");
+            if (session != null && session.isConnected())
+                session.disconnect();
+            session = new Session(uri.split(":").length < 2 ? "localhost:" + uri : uri);
+            session.connect();
+            result.put("session", session.getURI());
+            result.put("systemc", session.getSystemCVersion());
+            result.put("vcml", session.getVCMLVersion());
+            addTime(result);
+            break;
+
+        case "open":
+            need(args, 2);
+            if (session != null && session.isConnected())
+                session.disconnect();
+            session = new Session(new SessionSnapshot(Paths.get(args[1])));
+            session.connect();
+            result.put("session", session.getURI());
+            addTime(result);
+            break;
+
+        case "image":
+            need(args, 2);
+            if (session != null && session.isConnected())
+                session.disconnect();
+            session = new Session(new MemoryImage(Paths.get(args[1])));
+            session.connect();
+            result.put("session", session.getURI());
+            break;
+
+        case "snapshot":
+            need(args, 2);
+            SessionSnapshot.Range[] ranges = new SessionSnapshot.Range[args.length - 2];
+            for (int i = 2; i < args.length; i++)
+                ranges[i - 2] = SessionSnapshot.Range.parse(args[i]);
+            getSession().saveSnapshot(Paths.get(args[1]), ranges);
+            result.put("file", args[1]);
+            break;
+
+        case "disconnect":
+            if (session != null)
+                session.disconnect();
+            break;
+
+        case "time":
+            getSession();
+            addTime(result);
+            result.put("quantum", session.getQuantum());
+            break;
+
+        case "step":
+            getSession().stepSimulation(args.length > 1 ? Integer.parseInt(args[1]) : 1);
+            addTime(result);
+            break;
+
+        case "run":
+            need(args, 2);
+            double duration = SimulationTime.parse(args[1]);
+            if (!(duration > 0.0))
+                throw new SessionException("invalid duration '" + args[1] + "'");
+            result.put("completed", getSession().runSimulationFor(duration));
+            addTime(result);
+            break;
+
+        case "until":
+            need(args, 2);
+            Condition condition;
+            try {
+                condition = Condition.compile(String.join(" ", Arrays.copyOfRange(args, 1, args.length)));
+            } catch (ParseException e) {
+                throw new SessionException(e.getMessage());
+            }
+
+            ConditionResult outcome = getSession().runSimulationUntil(condition, Session.DEFAULT_MAX_STEPS);
+            result.put("satisfied", outcome.isSatisfied());
+            if (outcome.isSatisfied())
+                result.put("step", outcome.getStep());
+            result.put("steps", outcome.getSteps());
+            result.put("roundtrips", outcome.getRoundTrips());
+            addTime(result);
+            break;
+
+        case "watch":
+            need(args, 2);
+            SessionSnapshot.Range[] watched = new SessionSnapshot.Range[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                watched[i - 1] = SessionSnapshot.Range.parse(args[i]);
+
+            WatchpointResult change = getSession().runSimulationUntilChanged(new Watchpoint(watched),
+                    Session.DEFAULT_MAX_STEPS);
+            result.put("triggered", change.isTriggered());
+            if (change.isTriggered()) {
+                result.put("module", change.getRange().getModule());
+                result.put("address", change.getAddress());
+                result.put("step", change.getStep());
+            }
+            result.put("steps", change.getSteps());
+            result.put("roundtrips", change.getRoundTrips());
+            addTime(result);
+            break;
+
+        case "quantum":
+            if (args.length > 1) {
+                double quantum = SimulationTime.parse(args[1]);
+                if (!(quantum > 0.0))
+                    throw new SessionException("invalid quantum '" + args[1] + "'");
+                getSession().setQuantum(quantum);
+            }
+            result.put("quantum", getSession().getQuantum());
+            break;
+
+        case "get":
+            need(args, 2);
+            String[] names = Arrays.copyOfRange(args, 1, args.length);
+            String[] read = getSession().getAttributes(names);
+            Map<String, Object> values = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < names.length; i++)
+                values.put(names[i], read[i]);
+            result.put("values", values);
+            if (Arrays.asList(read).contains(null))
+                throw new SessionException("cannot read " + names[Arrays.asList(read).indexOf(null)]);
+            break;
+
+        case "set":
+            need(args, 3);
+            Map<String, String> assignment = new LinkedHashMap<String, String>();
+            assignment.put(args[1], String.join(" ", Arrays.copyOfRange(args, 2, args.length)));
+            if (!getSession().setAttributes(assignment).isEmpty())
+                throw new SessionException("cannot set " + args[1]);
+            break;
+
+        case "exec":
+            need(args, 3);
+            result.put("output", getSession().executeCommand(args[1], Arrays.copyOfRange(args, 2, args.length)));
+            break;
+
+        case "dump":
+            List<Object> modules = new ArrayList<Object>();
+            if (args.length > 1) {
+                Module module = getSession().findObject(args[1]);
+                if (module == null)
+                    throw new SessionException("no such module '" + args[1] + "'");
+                dump(module, modules);
+            } else {
+                for (Module module : getSession().getTopLevelObjects())
+                    dump(module, modules);
+            }
+            result.put("modules", modules);
+            break;
+
+        case "quit":
+            getSession().quitSimulation();
+            session.disconnect();
+            break;
+
+        default:
+            throw new SessionException("unknown command '" + args[0] + "'");
+        }
+    }
+
+    private boolean run(Reader script) throws IOException {
+        BufferedReader reader = new BufferedReader(script);
+        boolean success = true;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] args = line.split("\\s+");
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            result.put("line", lineNumber);
+            result.put("command", line);
+
+            long start = System.nanoTime();
+            try {
+                execute(args, result);
+                result.put("ok", true);
+            } catch (SessionException | NumberFormatException e) {
+                result.put("ok", false);
+                result.put("error", e.getMessage());
+                success = false;
+            }
+
+            result.put("ms", (System.nanoTime() - start) / 1000000);
+            print(result);
+
+            if (!success && !keepGoing)
+                break;
+        }
+
+        return success;
+    }
+
+    // Runs a gateway until its connection to the simulator breaks.
+    private boolean serve(String uri, int port) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("command", "gateway");
+        result.put("session", uri);
+
+        SessionGateway gateway;
+        try {
+            String[] info = uri.split(":");
+            gateway = new SessionGateway(info[0], Integer.parseInt(info[1]));
+            result.put("gateway", "localhost:" + gateway.start(port));
+            result.put("ok", true);
+            print(result);
+        } catch (SessionException | NumberFormatException e) {
+            result.put("ok", false);
+            result.put("error", e.getMessage());
+            print(result);
+            return false;
+        }
+
+        while (gateway.isActive()) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        gateway.stop();
+        result.clear();
+        result.put("command", "gateway");
+        result.put("requests", gateway.getRequests());
+        result.put("forwarded", gateway.getForwarded());
+        result.put("bursts", gateway.getBursts());
+        result.put("hits", gateway.getCacheHits());
+        result.put("ok", gateway.getError() == null);
+        if (gateway.getError() != null)
+            result.put("error", gateway.getError().getMessage());
+        print(result);
+        return gateway.getError() == null;
+    }
+
+    public Main(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Main main = new Main(System.out);
+        String commands = null;
+        int gateway = -1;
+        List<String> positional = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-c":
+                if (++i >= args.length) {
+                    System.err.println(USAGE);
+                    System.exit(2);
+                }
+                commands = args[i].replace(';', '\n');
+                break;
+            case "-g":
+                if (++i >= args.length) {
+                    System.err.println(USAGE);
+                    System.exit(2);
+                }
+                gateway = Integer.parseInt(args[i]);
+                break;
+            case "-k":
+                main.keepGoing = true;
+                break;
+            case "-t":
+                main.text = true;
+                break;
+            case "-l":
+                for (Session session : Session.getAvailableSessions())
+                    System.out.println(main.text ? session.getURI() : toJSON(session.getURI()));
+                return;
+            case "-h":
+            case "--help":
+                System.out.println(USAGE);
+                return;
+            default:
+                positional.add(args[i]);
+            }
+        }
+
+        if (!positional.isEmpty() && positional.get(0).contains(":"))
+            main.defaultURI = positional.remove(0);
+
+        if (gateway >= 0) {
+            if (main.defaultURI == null) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+
+            System.exit(main.serve(main.defaultURI, gateway) ? 0 : 1);
+        }
+
+        Reader script;
+        if (commands != null)
+            script = new StringReader(commands);
+        else if (!positional.isEmpty())
+            script = new FileReader(positional.get(0));
+        else
+            script = new InputStreamReader(System.in);
+
+        boolean success;
+        try {
+            if (main.defaultURI != null)
+                success = main.run(new StringReader("connect")) && main.run(script);
+            else
+                success = main.run(script);
+        } finally {
+            script.close();
+            try {
+                if (main.session != null)
+                    main.session.disconnect();
+            } catch (SessionException e) {
+                // ignore, we are exiting anyway
+            }
+        }
+
+        System.exit(success ? 0 : 1);
+    }
+
+}
@@ -0,0 +1,488 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page cache for the memories of a session. Memory is fetched in pages of
+ * {@link #PAGE_SIZE} bytes with one <tt>show</tt> command each instead of one
+ * command per displayed row, and the pages are shared by all views of the
+ * session. Pages are stamped with the session generation they were read in
+ * and are refetched once the simulation has advanced. The least recently
+ * used pages are evicted when the cache exceeds its byte budget.
+ * <p>
+ * A refetched page remembers which of its bytes differ from the generation
+ * it replaces, so that views can highlight changes. Memories that offer a
+ * <tt>hash</tt> command are asked for the hashes of stale pages first and
+ * only pages whose hash changed are transferred again.
+ */
+public class MemoryCache {
+
+    public static final int PAGE_SIZE = 4096;
+
+    public static final long DEFAULT_BUDGET = Long.getLong("vcml.session.memory.cache", 16 << 20);
+
+    public static final String CMD_SHOW = "show";
+
+    public static final String CMD_HASH = "hash";
+
+    public static class Page {
+        private final String module;
+        private final long address;
+        private final long generation;
+        private final byte[] data; // null if the page cannot be read
+        private final String hash; // as reported by the memory, if supported
+        private final BitSet changes; // bytes that differ from the previous generation
+
+        public String getModule() {
+            return module;
+        }
+
+        public long getAddress() {
+            return address;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public boolean isError() {
+            return data == null;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Returns true if the byte at the given page offset differs from the
+         * previous generation of this page.
+         */
+        public boolean isChanged(int offset) {
+            return changes != null && changes.get(offset);
+        }
+
+        public boolean hasChanges() {
+            return changes != null && !changes.isEmpty();
+        }
+
+        Page(String module, long address, long generation, byte[] data, String hash, BitSet changes) {
+            this.module = module;
+            this.address = address;
+            this.generation = generation;
+            this.data = data;
+            this.hash = hash;
+            this.changes = changes;
+        }
+    }
+
+    private Session session;
+
+    private long budget = DEFAULT_BUDGET;
+
+    private long size = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long unchanged = 0;
+
+    // Whether a memory offers a hash command, found out on first use.
+    private final Map<String, Boolean> hashing = new HashMap<String, Boolean>();
+
+    private final LinkedHashMap<String, Page> pages = new LinkedHashMap<String, Page>(64, 0.75f, true);
+
+    private static String key(String module, long page) {
+        return module + '@' + page;
+    }
+
+    /**
+     * Parses the output of a memory <tt>show</tt> command, one line per row
+     * with the bytes following the address, e.g. "00001000: 12 34 56 ...".
+     * @return  Number of bytes stored into <tt>data</tt>
+     */
+    static int parse(String output, byte[] data, int offset) {
+        // Scans the characters directly, this runs for every byte of bulk
+        // memory transfers.
+        int idx = offset;
+        int length = output.length();
+        int pos = 0;
+        while (pos < length) {
+            int eol = output.indexOf('\n', pos);
+            if (eol < 0)
+                eol = length;
+
+            int colon = output.indexOf(':', pos);
+            if (colon >= 0 && colon < eol)
+                pos = colon + 1;
+
+            while (pos < eol) {
+                while (pos < eol && Character.isWhitespace(output.charAt(pos)))
+                    pos++;
+
+                int token = pos;
+                while (pos < eol && !Character.isWhitespace(output.charAt(pos)))
+                    pos++;
+
+                if (pos - token == 2 && idx < data.length)
+                    data[idx++] = (byte) (digit(output.charAt(token)) << 4 | digit(output.charAt(token + 1)));
+            }
+
+            pos = eol + 1;
+        }
+
+        return idx - offset;
+    }
+
+    /**
+     * Returns the index of the byte in the output of a <tt>show</tt> command
+     * that covers a character position, or of the next byte if the position
+     * lies between bytes, scanning like {@link #parse(String, byte[], int)}.
+     * @return  Byte index or -1 if no byte follows the position
+     */
+    static int indexOf(String output, int position) {
+        int idx = 0;
+        int length = output.length();
+        int pos = 0;
+        while (pos < length) {
+            int eol = output.indexOf('\n', pos);
+            if (eol < 0)
+                eol = length;
+
+            int colon = output.indexOf(':', pos);
+            if (colon >= 0 && colon < eol)
+                pos = colon + 1;
+
+            while (pos < eol) {
+                while (pos < eol && Character.isWhitespace(output.charAt(pos)))
+                    pos++;
+
+                int token = pos;
+                while (pos < eol && !Character.isWhitespace(output.charAt(pos)))
+                    pos++;
+
+                if (pos - token == 2) {
+                    if (pos > position)
+                        return idx;
+                    idx++;
+                }
+            }
+
+            pos = eol + 1;
+        }
+
+        return -1;
+    }
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Formats memory like the <tt>show</tt> command of a VCML memory does,
+     * the counterpart of {@link #parse(String, byte[], int)}.
+     */
+    static String format(long address, byte[] data) {
+        StringBuilder builder = new StringBuilder(data.length * 3 + data.length / 16 * 10);
+        for (int i = 0; i < data.length; i++) {
+            if (i % 16 == 0) {
+                if (i > 0)
+                    builder.append('\n');
+                String addr = Long.toHexString(address + i);
+                for (int pad = addr.length(); pad < 8; pad++)
+                    builder.append('0');
+                builder.append(addr).append(':');
+            }
+
+            builder.append(' ').append(DIGITS[(data[i] >> 4) & 0xf]).append(DIGITS[data[i] & 0xf]);
+        }
+
+        return builder.toString();
+    }
+
+    private static int digit(char c) {
+        int value = Character.digit(c, 16);
+        if (value < 0)
+            throw new NumberFormatException("invalid hex digit '" + c + "'");
+        return value;
+    }
+
+    static String[] request(String module, long address, long length) {
+        return request(module, CMD_SHOW, address, length);
+    }
+
+    static String[] request(String module, String command, long address, long length) {
+        return new String[] { RemoteSerialProtocol.EXEC, module, command, Long.toUnsignedString(address),
+                Long.toUnsignedString(address + length) };
+    }
+
+    private static BitSet diff(Page old, byte[] data) {
+        BitSet changes = new BitSet(PAGE_SIZE);
+        if (old == null || old.isError() || data == null)
+            return changes;
+
+        byte[] previous = old.getData();
+        for (int i = 0; i < PAGE_SIZE; i++)
+            if (previous[i] != data[i])
+                changes.set(i);
+        return changes;
+    }
+
+    boolean supportsHash(RemoteSerialProtocol protocol, String module) throws SessionException {
+        synchronized (this) {
+            Boolean known = hashing.get(module);
+            if (known != null)
+                return known;
+        }
+
+        boolean found = false;
+        try {
+            Response info = protocol.command(RemoteSerialProtocol.INFO, module);
+            for (String cmd : info.getValues("cmd"))
+                found |= cmd.startsWith(CMD_HASH + ":");
+        } catch (SessionException e) {
+            // treat as not supported
+        }
+
+        synchronized (this) {
+            hashing.put(module, found);
+        }
+
+        return found;
+    }
+
+    private void evict() {
+        Iterator<Page> it = pages.values().iterator();
+        while (size > budget && it.hasNext()) {
+            it.next();
+            size -= PAGE_SIZE;
+            it.remove();
+        }
+    }
+
+    private void store(Page page) {
+        if (pages.put(key(page.getModule(), page.getAddress() / PAGE_SIZE), page) == null)
+            size += PAGE_SIZE;
+        evict();
+    }
+
+    private boolean isValid(Page page) {
+        return page != null && page.getGeneration() == session.getGeneration();
+    }
+
+    public MemoryCache(Session session) {
+        this.session = session;
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the number of bytes the cache may hold before evicting pages.
+     */
+    public synchronized void setBudget(long bytes) {
+        budget = Math.max(PAGE_SIZE, bytes);
+        evict();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of stale pages that were found unchanged by their
+     * hash and therefore not transferred again.
+     */
+    public synchronized long getUnchanged() {
+        return unchanged;
+    }
+
+    public synchronized void clear() {
+        pages.clear();
+        hashing.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns true if the page holding the address is cached and current.
+     */
+    public synchronized boolean contains(String module, long address) {
+        Page page = pages.get(key(module, address / PAGE_SIZE));
+        return isValid(page);
+    }
+
+    /**
+     * Fetches all listed pages of a module that are not cached in one burst.
+     * @param module    Full hierarchical name of the memory module
+     * @param addresses Addresses within the pages to fetch
+     */
+    public void fetch(String module, long... addresses) throws SessionException {
+        List<Long> missing = new ArrayList<Long>();
+        List<Page> previous = new ArrayList<Page>();
+        long generation;
+        synchronized (this) {
+            generation = session.getGeneration();
+            for (long address : addresses) {
+                long base = address - Long.remainderUnsigned(address, PAGE_SIZE);
+                Page page = pages.get(key(module, base / PAGE_SIZE));
+                if (!isValid(page) && !missing.contains(base)) {
+                    missing.add(base);
+                    previous.add(page);
+                }
+            }
+        }
+
+        RemoteSerialProtocol protocol = session.getProtocol();
+        if (missing.isEmpty() || protocol == null || session.isRunning())
+            return;
+
+        // Images are copied directly instead of formatting and parsing text.
+        // Pages that overlap the image only in part are padded with zeros.
+        MemoryImage image = session.getImage();
+        if (image != null) {
+            synchronized (this) {
+                misses += missing.size();
+                for (long base : missing) {
+                    byte[] data = new byte[PAGE_SIZE];
+                    boolean covered = image.copy(base, data, 0, PAGE_SIZE) > 0;
+                    store(new Page(module, base, generation, covered ? data : null, null, null));
+                }
+            }
+            return;
+        }
+
+        // Ask for hashes first, pages with an unchanged hash are only restamped.
+        List<String> hashes = new ArrayList<String>(Collections.nCopies(missing.size(), (String) null));
+        if (supportsHash(protocol, module)) {
+            String[] requests = new String[missing.size()];
+            for (int i = 0; i < requests.length; i++)
+                requests[i] = RemoteSerialProtocol.join(request(module, CMD_HASH, missing.get(i), PAGE_SIZE));
+
+            String[] replies = protocol.exchange(requests);
+            for (int i = 0; i < replies.length; i++) {
+                try {
+                    hashes.set(i, new Response(requests[i], replies[i]).toString().trim());
+                } catch (SessionException e) {
+                    // transfer the page
+                }
+            }
+
+            // Missing pages, their previous pages and hashes stay aligned.
+            synchronized (this) {
+                for (int i = missing.size() - 1; i >= 0; i--) {
+                    Page old = previous.get(i);
+                    String hash = hashes.get(i);
+                    if (hash == null || old == null || old.isError() || !hash.equals(old.getHash()))
+                        continue;
+
+                    store(new Page(module, old.getAddress(), generation, old.getData(), hash, null));
+                    unchanged++;
+                    missing.remove(i);
+                    previous.remove(i);
+                    hashes.remove(i);
+                }
+            }
+        }
+
+        String[] requests = new String[missing.size()];
+        for (int i = 0; i < requests.length; i++)
+            requests[i] = RemoteSerialProtocol.join(request(module, missing.get(i), PAGE_SIZE));
+
+        String[] replies = requests.length > 0 ? protocol.exchange(requests) : requests;
+        synchronized (this) {
+            misses += replies.length;
+            for (int i = 0; i < replies.length; i++) {
+                byte[] data = new byte[PAGE_SIZE];
+                try {
+                    Response resp = new Response(requests[i], replies[i]);
+                    if (parse(resp.toString(), data, 0) != PAGE_SIZE)
+                        data = null;
+                } catch (SessionException | NumberFormatException e) {
+                    data = null;
+                }
+
+                store(new Page(module, missing.get(i), generation, data, hashes.get(i), diff(previous.get(i), data)));
+            }
+        }
+    }
+
+    /**
+     * Returns the current page holding the given address, fetching it from
+     * the simulator if needed.
+     */
+    public Page getPage(String module, long address) throws SessionException {
+        long base = address - Long.remainderUnsigned(address, PAGE_SIZE);
+        synchronized (this) {
+            Page page = pages.get(key(module, base / PAGE_SIZE));
+            if (isValid(page)) {
+                hits++;
+                return page;
+            }
+        }
+
+        fetch(module, base);
+        synchronized (this) {
+            return pages.get(key(module, base / PAGE_SIZE));
+        }
+    }
+
+    /**
+     * Reads memory through the cache.
+     * @return  The requested bytes or <tt>null</tt> if any part of the range
+     *          cannot be read
+     */
+    public byte[] read(String module, long address, int length) throws SessionException {
+        byte[] result = new byte[length];
+        int done = 0;
+        while (done < length) {
+            long current = address + done;
+            Page page = getPage(module, current);
+            if (page == null || page.isError())
+                return null;
+
+            int offset = (int) (current - page.getAddress());
+            int count = Math.min(length - done, PAGE_SIZE - offset);
+            System.arraycopy(page.getData(), offset, result, done, count);
+            done += count;
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,326 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.vcml.session.MemoryCache.Page;
+
+/**
+ * Records the contents of watched memory ranges each time the simulation
+ * halts, so that past states can be shown without asking the simulator. A
+ * page is only stored again when its contents changed since its previous
+ * version; versions are deflated into direct buffers outside of the Java
+ * heap. The oldest records are dropped once the stored versions exceed the
+ * budget. Recording is off until enabled.
+ * <p>
+ * Single steps and every step of a multi-step command are recorded. Runs
+ * for a duration, until a condition holds or until memory changes are
+ * recorded once when they stop.
+ */
+public class MemoryHistory {
+
+    public static final long DEFAULT_BUDGET = Long.getLong("vcml.session.memory.history", 64 << 20);
+
+    public static class Record {
+
+        private final int index;
+        private final long generation;
+        private final double time;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Returns the simulation time in seconds at which the record was taken.
+         */
+        public double getTime() {
+            return time;
+        }
+
+        Record(int index, long generation, double time) {
+            this.index = index;
+            this.generation = generation;
+            this.time = time;
+        }
+    }
+
+    // One stored page version, valid from its record until the next version.
+    private static class Version {
+        final ByteBuffer data; // deflated, null if the page could not be read
+        final byte[] digest;
+
+        Version(ByteBuffer data, byte[] digest) {
+            this.data = data;
+            this.digest = digest;
+        }
+
+        int getSize() {
+            return data != null ? data.capacity() : 0;
+        }
+    }
+
+    private final Session session;
+
+    private final List<SessionSnapshot.Range> watched = new ArrayList<SessionSnapshot.Range>();
+
+    private final List<Record> records = new ArrayList<Record>();
+
+    // Versions of each page by the index of the record that stored them.
+    private final Map<String, TreeMap<Integer, Version>> pages = new HashMap<String, TreeMap<Integer, Version>>();
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private final byte[] scratch = new byte[2 * MemoryCache.PAGE_SIZE];
+
+    private boolean enabled = false;
+
+    private int next = 0;
+
+    private long size = 0;
+
+    private long budget = DEFAULT_BUDGET;
+
+    private static String key(String module, long base) {
+        return module + '@' + Long.toUnsignedString(base, 16);
+    }
+
+    private static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // required on every platform
+        }
+    }
+
+    private Version compress(byte[] data) {
+        if (data == null)
+            return new Version(null, null);
+
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int length = deflater.deflate(scratch);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(scratch, 0, length);
+        return new Version(buffer, digest(data));
+    }
+
+    private static byte[] decompress(Version version) {
+        if (version.data == null)
+            return null;
+
+        byte[] input = new byte[version.data.capacity()];
+        ByteBuffer source = version.data.duplicate();
+        source.clear();
+        source.get(input);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            byte[] data = new byte[MemoryCache.PAGE_SIZE];
+            if (inflater.inflate(data) != data.length)
+                return null;
+            return data;
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public MemoryHistory(Session session) {
+        this.session = session;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if records are being taken, i.e. recording is enabled and
+     * there is something to watch.
+     */
+    public synchronized boolean isRecording() {
+        return enabled && !watched.isEmpty();
+    }
+
+    /**
+     * Turns recording on or off. Turning it off drops all records.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            clear();
+    }
+
+    public synchronized void watch(SessionSnapshot.Range range) {
+        watched.add(range);
+    }
+
+    public synchronized void unwatch(SessionSnapshot.Range range) {
+        watched.remove(range);
+    }
+
+    public synchronized SessionSnapshot.Range[] getWatched() {
+        return watched.toArray(new SessionSnapshot.Range[watched.size()]);
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized void setBudget(long bytes) {
+        budget = bytes;
+        trim();
+    }
+
+    /**
+     * Returns the number of bytes held by stored page versions.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized Record[] getRecords() {
+        return records.toArray(new Record[records.size()]);
+    }
+
+    public synchronized void clear() {
+        records.clear();
+        pages.clear();
+        size = 0;
+    }
+
+    /**
+     * Stores the current contents of all watched ranges as a new record. Does
+     * nothing if recording is off or no range is watched. Pages are read
+     * through the memory cache in one burst per module.
+     */
+    public void record() throws SessionException {
+        SessionSnapshot.Range[] ranges;
+        synchronized (this) {
+            if (!enabled || watched.isEmpty())
+                return;
+            ranges = getWatched();
+        }
+
+        MemoryCache cache = session.getMemoryCache();
+        Map<String, List<Long>> bases = new HashMap<String, List<Long>>();
+        for (SessionSnapshot.Range range : ranges) {
+            List<Long> list = bases.computeIfAbsent(range.getModule(), k -> new ArrayList<Long>());
+            long first = range.getAddress() - Long.remainderUnsigned(range.getAddress(), MemoryCache.PAGE_SIZE);
+            for (long base = first; base - range.getAddress() < range.getLength(); base += MemoryCache.PAGE_SIZE)
+                if (!list.contains(base))
+                    list.add(base);
+        }
+
+        Map<String, Page> current = new HashMap<String, Page>();
+        for (Map.Entry<String, List<Long>> entry : bases.entrySet()) {
+            long[] addresses = new long[entry.getValue().size()];
+            for (int i = 0; i < addresses.length; i++)
+                addresses[i] = entry.getValue().get(i);
+
+            cache.fetch(entry.getKey(), addresses);
+            for (long base : addresses)
+                current.put(key(entry.getKey(), base), cache.getPage(entry.getKey(), base));
+        }
+
+        synchronized (this) {
+            int index = next++;
+            records.add(new Record(index, session.getGeneration(), session.getTime()));
+            for (Map.Entry<String, Page> entry : current.entrySet()) {
+                TreeMap<Integer, Version> versions = pages.computeIfAbsent(entry.getKey(),
+                        k -> new TreeMap<Integer, Version>());
+                Page page = entry.getValue();
+                byte[] data = page == null || page.isError() ? null : page.getData();
+
+                Map.Entry<Integer, Version> last = versions.lastEntry();
+                if (last != null && (data == null ? last.getValue().digest == null
+                        : Arrays.equals(last.getValue().digest, digest(data))))
+                    continue; // unchanged, the previous version stays valid
+
+                Version version = compress(data);
+                versions.put(index, version);
+                size += version.getSize();
+            }
+
+            trim();
+        }
+    }
+
+    // Drops the oldest records until the stored versions fit the budget.
+    private void trim() {
+        while (size > budget && records.size() > 1) {
+            records.remove(0);
+            int oldest = records.get(0).getIndex();
+
+            Iterator<TreeMap<Integer, Version>> it = pages.values().iterator();
+            while (it.hasNext()) {
+                TreeMap<Integer, Version> versions = it.next();
+                Integer keep = versions.floorKey(oldest); // still valid
+                while (!versions.isEmpty() && versions.firstKey() < oldest && !versions.firstKey().equals(keep))
+                    size -= versions.pollFirstEntry().getValue().getSize();
+                if (versions.isEmpty())
+                    it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the page holding an address as it was at a record.
+     * @param index Index of the record, see {@link Record#getIndex()}
+     * @return      The page data or <tt>null</tt> if it was not recorded
+     */
+    public byte[] getPage(int index, String module, long address) {
+        long base = address - Long.remainderUnsigned(address, MemoryCache.PAGE_SIZE);
+        Version version;
+        synchronized (this) {
+            if (records.isEmpty() || index < records.get(0).getIndex())
+                return null;
+
+            TreeMap<Integer, Version> versions = pages.get(key(module, base));
+            Map.Entry<Integer, Version> entry = versions != null ? versions.floorEntry(index) : null;
+            if (entry == null)
+                return null;
+            version = entry.getValue();
+        }
+
+        return decompress(version);
+    }
+
+}
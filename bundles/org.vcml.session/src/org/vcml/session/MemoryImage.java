@@ -0,0 +1,305 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A memory image on disk, either a raw dump that starts at address zero or
+ * the loadable segments of an ELF file placed at their physical addresses.
+ * The file is mapped in windows of up to 1 GiB and bytes are only read when
+ * accessed, so opening even large images takes no time and no heap.
+ */
+public class MemoryImage {
+
+    public static final long WINDOW_SIZE = 1L << 30;
+
+    private static final int PT_LOAD = 1;
+
+    public static class Segment implements Comparable<Segment> {
+
+        private final long address;
+        private final long offset;
+        private final long fileSize;
+        private final long memorySize;
+
+        public long getAddress() {
+            return address;
+        }
+
+        /**
+         * Returns the position of the segment data in the file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        /**
+         * Returns the size in memory, bytes past the file size read as zero.
+         */
+        public long getMemorySize() {
+            return memorySize;
+        }
+
+        public Segment(long address, long offset, long fileSize, long memorySize) {
+            this.address = address;
+            this.offset = offset;
+            this.fileSize = fileSize;
+            this.memorySize = memorySize;
+        }
+
+        @Override
+        public int compareTo(Segment other) {
+            return Long.compareUnsigned(address, other.address);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("0x%x+0x%x", address, memorySize);
+        }
+    }
+
+    private final Path path;
+
+    private final long fileSize;
+
+    private volatile MappedByteBuffer[] windows;
+
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    private boolean elf = false;
+
+    private static long get(ByteBuffer header, int offset, boolean wide) {
+        return wide ? header.getLong(offset) : header.getInt(offset) & 0xffffffffL;
+    }
+
+    private ByteBuffer readHeader(long offset, int length) {
+        byte[] data = new byte[length];
+        if (!readFile(offset, data, 0, length))
+            return null;
+        return ByteBuffer.wrap(data);
+    }
+
+    // Reads the program headers of an ELF file, returns false for other files.
+    private boolean parseElf() throws SessionException {
+        ByteBuffer ident = readHeader(0, 64);
+        if (ident == null || ident.getInt(0) != 0x7f454c46)
+            return false;
+
+        boolean wide = ident.get(4) == 2;
+        ident.order(ident.get(5) == 2 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        long phoff = get(ident, wide ? 0x20 : 0x1c, wide);
+        int phentsize = ident.getShort(wide ? 0x36 : 0x2a) & 0xffff;
+        int phnum = ident.getShort(wide ? 0x38 : 0x2c) & 0xffff;
+
+        for (int i = 0; i < phnum; i++) {
+            ByteBuffer ph = readHeader(phoff + (long) i * phentsize, phentsize);
+            if (ph == null)
+                throw new SessionException("Truncated ELF file " + path);
+
+            ph.order(ident.order());
+            if (ph.getInt(0) != PT_LOAD)
+                continue;
+
+            long offset = get(ph, wide ? 0x08 : 0x04, wide);
+            long paddr = get(ph, wide ? 0x18 : 0x0c, wide);
+            long filesz = get(ph, wide ? 0x20 : 0x10, wide);
+            long memsz = get(ph, wide ? 0x28 : 0x14, wide);
+            if (memsz > 0)
+                segments.add(new Segment(paddr, offset, Math.min(filesz, memsz), memsz));
+        }
+
+        Collections.sort(segments);
+        return true;
+    }
+
+    /**
+     * Maps an image file. ELF files are recognized by their header, all other
+     * files are taken as raw memory contents.
+     */
+    public MemoryImage(Path path) throws SessionException {
+        this.path = path;
+
+        try {
+            fileSize = Files.size(path);
+        } catch (IOException e) {
+            throw new SessionException("Failed to open image " + path, e);
+        }
+
+        open();
+        elf = parseElf();
+        if (!elf && fileSize > 0)
+            segments.add(new Segment(0, 0, fileSize, fileSize));
+    }
+
+    /**
+     * Maps the file again after {@link #close()}, does nothing while mapped.
+     */
+    public synchronized void open() throws SessionException {
+        if (windows != null)
+            return;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != fileSize)
+                throw new SessionException("Image " + path + " has changed");
+
+            MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((fileSize + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+            for (int i = 0; i < mapped.length; i++) {
+                long start = i * WINDOW_SIZE;
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+            }
+            windows = mapped;
+        } catch (IOException e) {
+            throw new SessionException("Failed to open image " + path, e);
+        }
+    }
+
+    /**
+     * Drops the mapping, which is released once no reader uses it anymore.
+     * Reads fail until the image is opened again.
+     */
+    public synchronized void close() {
+        windows = null;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isElf() {
+        return elf;
+    }
+
+    public Segment[] getSegments() {
+        return segments.toArray(new Segment[segments.size()]);
+    }
+
+    /**
+     * Returns the address after the highest byte of the image.
+     */
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments)
+            size = Math.max(size, segment.getAddress() + segment.getMemorySize());
+        return size;
+    }
+
+    private boolean readFile(long offset, byte[] data, int index, int length) {
+        MappedByteBuffer[] mapped = windows;
+        if (mapped == null || offset < 0 || offset + length > fileSize)
+            return false;
+
+        while (length > 0) {
+            ByteBuffer window = mapped[(int) (offset / WINDOW_SIZE)].duplicate();
+            int position = (int) (offset % WINDOW_SIZE);
+            int count = Math.min(length, window.capacity() - position);
+            window.position(position);
+            window.get(data, index, count);
+            offset += count;
+            index += count;
+            length -= count;
+        }
+
+        return true;
+    }
+
+    private Segment find(long address) {
+        for (Segment segment : segments) {
+            if (address - segment.getAddress() >= 0 && address - segment.getAddress() < segment.getMemorySize())
+                return segment;
+        }
+
+        return null;
+    }
+
+    // Returns the segment after an address or null.
+    private Segment next(long address) {
+        for (Segment segment : segments) {
+            if (Long.compareUnsigned(segment.getAddress(), address) > 0)
+                return segment;
+        }
+
+        return null;
+    }
+
+    /**
+     * Copies bytes of the image into an array, filling bytes that are not
+     * covered by the image with zeros.
+     * @return  Number of bytes covered by the image
+     */
+    public long copy(long address, byte[] data, int index, int length) {
+        long covered = 0;
+        while (length > 0) {
+            Segment segment = find(address);
+            if (segment == null) {
+                Segment following = next(address);
+                long gap = following != null ? following.getAddress() - address : length;
+                int count = (int) Math.min(length, gap);
+                Arrays.fill(data, index, index + count, (byte) 0);
+                address += count;
+                index += count;
+                length -= count;
+                continue;
+            }
+
+            long offset = address - segment.getAddress();
+            int count = (int) Math.min(length, segment.getMemorySize() - offset);
+            int stored = (int) Math.max(0, Math.min(count, segment.getFileSize() - offset));
+            if (stored > 0 && !readFile(segment.getOffset() + offset, data, index, stored))
+                stored = 0;
+            Arrays.fill(data, index + stored, index + count, (byte) 0);
+
+            covered += count;
+            address += count;
+            index += count;
+            length -= count;
+        }
+
+        return covered;
+    }
+
+    /**
+     * Copies bytes of the image into an array.
+     * @return  False if any part of the range is not covered by the image
+     */
+    public boolean read(long address, byte[] data, int index, int length) {
+        return copy(address, data, index, length) == length;
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName() + (elf ? " (ELF " + segments + ")" : "");
+    }
+
+}
@@ -0,0 +1,384 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches a memory for one or more byte patterns. The memory is streamed in
+ * large chunks using bursts of show commands, bypassing the memory cache, and
+ * each burst is scanned on a fork-join pool while the next one is read. Only
+ * two bursts are held at a time, so memories of any size can be searched.
+ * Matches are reported in address order as each burst completes.
+ */
+public class MemorySearch {
+
+    public static final int CHUNK_SIZE = 256 << 10;
+
+    public static final int BURST = 4; // chunks per exchange
+
+    public static final int SPLIT_SIZE = 64 << 10; // bytes scanned per task
+
+    public static final int DEFAULT_MAX_MATCHES = 10000;
+
+    public interface Listener {
+        /**
+         * Called from the searching thread for every match, in address
+         * order.
+         * @param pattern   Index of the pattern that matched
+         * @param address   Address of the first matching byte
+         */
+        public void found(int pattern, long address);
+    }
+
+    /**
+     * Boyer-Moore-Horspool matcher for a single pattern.
+     */
+    static class Matcher {
+
+        private final byte[] pattern;
+
+        private final int[] shift = new int[256];
+
+        public Matcher(byte[] pattern) {
+            this.pattern = pattern;
+            for (int i = 0; i < shift.length; i++)
+                shift[i] = pattern.length;
+            for (int i = 0; i < pattern.length - 1; i++)
+                shift[pattern[i] & 0xff] = pattern.length - 1 - i;
+        }
+
+        /**
+         * Collects the offsets of all matches that start in [from, to) and
+         * end before limit.
+         */
+        public void scan(byte[] data, int from, int to, int limit, List<Integer> offsets) {
+            int last = pattern.length - 1;
+            int pos = from;
+            while (pos < to && pos + last < limit) {
+                int i = last;
+                while (i >= 0 && data[pos + i] == pattern[i])
+                    i--;
+                if (i < 0)
+                    offsets.add(pos);
+                pos += shift[data[pos + last] & 0xff];
+            }
+        }
+    }
+
+    private static class Match implements Comparable<Match> {
+        final long address;
+        final int pattern;
+
+        Match(long address, int pattern) {
+            this.address = address;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            int cmp = Long.compareUnsigned(address, other.address);
+            return cmp != 0 ? cmp : Integer.compare(pattern, other.pattern);
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<List<Match>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] data;
+        private final long address;
+        private final int from;
+        private final int to;
+        private final int limit;
+
+        ScanTask(byte[] data, long address, int from, int to, int limit) {
+            this.data = data;
+            this.address = address;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+        }
+
+        @Override
+        protected List<Match> compute() {
+            if (to - from > SPLIT_SIZE) {
+                int mid = from + (to - from) / 2;
+                ScanTask upper = new ScanTask(data, address, mid, to, limit);
+                upper.fork();
+                List<Match> result = new ScanTask(data, address, from, mid, limit).compute();
+                result.addAll(upper.join());
+                return result;
+            }
+
+            List<Match> result = new ArrayList<Match>();
+            List<Integer> offsets = new ArrayList<Integer>();
+            for (int p = 0; p < matchers.length && !cancelled; p++) {
+                offsets.clear();
+                matchers[p].scan(data, from, to, limit, offsets);
+                for (int offset : offsets)
+                    result.add(new Match(address + offset, p));
+            }
+
+            return result;
+        }
+    }
+
+    private final Session session;
+
+    private final String module;
+
+    private final long start;
+
+    private final long end;
+
+    private final Matcher[] matchers;
+
+    private final int overlap;
+
+    private final ForkJoinPool pool;
+
+    private int maxMatches = DEFAULT_MAX_MATCHES;
+
+    private volatile boolean cancelled = false;
+
+    private volatile long scanned = 0;
+
+    private final AtomicInteger matches = new AtomicInteger();
+
+    private volatile int errors = 0;
+
+    /**
+     * Parses a search pattern: either text in double quotes or a sequence of
+     * hexadecimal bytes, e.g. <tt>de ad be ef</tt> or <tt>deadbeef</tt>.
+     */
+    public static byte[] parsePattern(String text) {
+        String trimmed = text.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\""))
+            return trimmed.substring(1, trimmed.length() - 1).getBytes(StandardCharsets.ISO_8859_1);
+
+        String hex = trimmed.replaceFirst("^0[xX]", "").replaceAll("\\s+", "");
+        if (hex.isEmpty() || (hex.length() % 2) != 0)
+            throw new IllegalArgumentException("invalid byte pattern: " + text);
+
+        byte[] pattern = new byte[hex.length() / 2];
+        for (int i = 0; i < pattern.length; i++)
+            pattern[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return pattern;
+    }
+
+    /**
+     * Parses several search patterns separated by <tt>|</tt>.
+     */
+    public static byte[][] parsePatterns(String text) {
+        String[] parts = text.split("\\|");
+        byte[][] patterns = new byte[parts.length][];
+        for (int i = 0; i < parts.length; i++)
+            patterns[i] = parsePattern(parts[i]);
+        return patterns;
+    }
+
+    public MemorySearch(Session session, String module, long start, long end, byte[]... patterns) {
+        if (patterns.length == 0)
+            throw new IllegalArgumentException("no search pattern given");
+
+        this.session = session;
+        this.module = module;
+        this.start = start;
+        this.end = end;
+        this.matchers = new Matcher[patterns.length];
+
+        int longest = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].length == 0)
+                throw new IllegalArgumentException("empty search pattern");
+            matchers[i] = new Matcher(patterns[i].clone());
+            longest = Math.max(longest, patterns[i].length);
+        }
+
+        this.overlap = longest - 1;
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the number of bytes searched so far.
+     */
+    public long getScanned() {
+        return scanned;
+    }
+
+    public int getMatches() {
+        return matches.get();
+    }
+
+    /**
+     * Returns the number of chunks that could not be read and were skipped.
+     */
+    public int getErrors() {
+        return errors;
+    }
+
+    public int getMaxMatches() {
+        return maxMatches;
+    }
+
+    public void setMaxMatches(int max) {
+        maxMatches = max;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Reads a burst of chunks starting at address, each followed by overlap
+    // bytes of the next one. Failed chunks are returned as null.
+    private byte[][] read(RemoteSerialProtocol protocol, long address, int count) throws SessionException {
+        String[] requests = new String[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            long lo = address + (long) i * CHUNK_SIZE;
+            lengths[i] = (int) Math.min(CHUNK_SIZE + overlap, end - lo);
+            requests[i] = RemoteSerialProtocol.join(MemoryCache.request(module, lo, lengths[i]));
+        }
+
+        MemoryImage image = session.getImage();
+        if (image != null) {
+            byte[][] chunks = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                byte[] data = new byte[lengths[i]];
+                if (image.copy(address + (long) i * CHUNK_SIZE, data, 0, data.length) > 0)
+                    chunks[i] = data; // gaps read as zeros
+            }
+            return chunks;
+        }
+
+        String[] replies = protocol.exchange(requests);
+        byte[][] chunks = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            try {
+                byte[] data = new byte[lengths[i]];
+                if (MemoryCache.parse(new Response(requests[i], replies[i]).toString(), data, 0) == data.length)
+                    chunks[i] = data;
+            } catch (SessionException | NumberFormatException e) {
+                // skipped below
+            }
+        }
+
+        return chunks;
+    }
+
+    private List<ForkJoinTask<List<Match>>> scan(long address, byte[][] chunks) {
+        List<ForkJoinTask<List<Match>>> tasks = new ArrayList<ForkJoinTask<List<Match>>>();
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] == null) {
+                errors++;
+                continue;
+            }
+
+            int length = (int) Math.min(CHUNK_SIZE, end - address - (long) i * CHUNK_SIZE);
+            ScanTask task = new ScanTask(chunks[i], address + (long) i * CHUNK_SIZE, 0, length, chunks[i].length);
+            tasks.add(pool.submit(task));
+        }
+
+        return tasks;
+    }
+
+    private boolean report(List<ForkJoinTask<List<Match>>> tasks, Listener listener) {
+        List<Match> found = new ArrayList<Match>();
+        for (ForkJoinTask<List<Match>> task : tasks)
+            found.addAll(task.join());
+
+        Collections.sort(found);
+        for (Match match : found) {
+            if (matches.get() >= maxMatches || cancelled)
+                return false;
+            matches.incrementAndGet();
+            listener.found(match.pattern, match.address);
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs the search on the calling thread until the end of the range is
+     * reached, the search is cancelled or the match limit is hit.
+     * @return  True if the whole range was searched
+     */
+    public boolean run(Listener listener) throws SessionException {
+        if (!session.isConnected() || session.isRunning())
+            throw new SessionException("Session " + session + " is not halted");
+
+        RemoteSerialProtocol protocol = session.getProtocol();
+        List<ForkJoinTask<List<Match>>> pending = Collections.emptyList();
+        long pendingSize = 0;
+        long address = start;
+
+        try {
+            while (Long.compareUnsigned(address, end) < 0 && !cancelled) {
+                long left = end - address;
+                int count = (int) Math.min(BURST, (left + CHUNK_SIZE - 1) / CHUNK_SIZE);
+                byte[][] chunks = read(protocol, address, count);
+
+                // scan this burst while the previous one is reported
+                List<ForkJoinTask<List<Match>>> current = scan(address, chunks);
+                if (!report(pending, listener))
+                    cancel();
+
+                scanned += pendingSize;
+                pending = current;
+                pendingSize = Math.min(left, (long) count * CHUNK_SIZE);
+                address += pendingSize;
+            }
+
+            if (!cancelled && !report(pending, listener))
+                cancel();
+            else if (!cancelled)
+                scanned += pendingSize;
+        } finally {
+            for (ForkJoinTask<List<Match>> task : pending)
+                task.cancel(false);
+        }
+
+        return !cancelled;
+    }
+
+}
@@ -0,0 +1,176 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies memory contents between memory modules and files. Dumps stream the
+ * range in bursts of large show requests; the next burst is already on the
+ * wire while the previous one is decoded and written to the file channel.
+ * Loads pass the image to the load command of the memory, so that the
+ * simulator reads the file itself. A load is a single command, it can neither
+ * report progress nor be canceled, and only works for simulators that see
+ * the same file system (see {@link Session#isLocal()}).
+ */
+public class MemoryTransfer {
+
+    public static final int CHUNK_SIZE = 256 << 10;
+
+    public static final int BURST = 4; // chunks per exchange
+
+    public static final String CMD_LOAD = "load";
+
+    public interface Progress {
+        /**
+         * Called after each burst with the number of bytes transferred.
+         */
+        public void worked(long bytes);
+
+        public boolean isCanceled();
+    }
+
+    private MemoryTransfer() {
+        // static helpers only
+    }
+
+    static String[] requests(String module, long address, long end) {
+        int count = (int) Math.min(BURST, (end - address + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        String[] requests = new String[count];
+        for (int i = 0; i < count; i++) {
+            long lo = address + (long) i * CHUNK_SIZE;
+            requests[i] = RemoteSerialProtocol.join(MemoryCache.request(module, lo, Math.min(CHUNK_SIZE, end - lo)));
+        }
+
+        return requests;
+    }
+
+    /**
+     * Writes a memory range into a file. The file is only replaced once the
+     * whole range has been read.
+     * @return  True if the dump completed, false if it was canceled
+     */
+    public static boolean dump(Session session, String module, long address, long length, Path file,
+            Progress progress) throws SessionException {
+        if (!session.isConnected() || session.isRunning())
+            throw new SessionException("Session " + session + " is not halted");
+
+        RemoteSerialProtocol protocol = session.getProtocol();
+        ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "vcml-dump-" + module);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Path temp = file.resolveSibling(file.getFileName() + ".part");
+        long end = address + length;
+        boolean complete = false;
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                byte[] data = new byte[CHUNK_SIZE];
+                long current = address;
+                String[] sent = requests(module, current, end);
+                Future<String[]> pending = reader.submit(() -> protocol.exchange(sent));
+                String[] burst = sent;
+
+                while (pending != null) {
+                    String[] replies = pending.get();
+                    String[] requests = burst;
+                    long next = current + (long) requests.length * CHUNK_SIZE;
+
+                    // send the next burst before decoding this one
+                    pending = null;
+                    if (Long.compareUnsigned(next, end) < 0 && !progress.isCanceled()) {
+                        String[] following = requests(module, next, end);
+                        pending = reader.submit(() -> protocol.exchange(following));
+                        burst = following;
+                    }
+
+                    for (int i = 0; i < requests.length; i++) {
+                        long lo = current + (long) i * CHUNK_SIZE;
+                        int expected = (int) Math.min(CHUNK_SIZE, end - lo);
+                        int got = MemoryCache.parse(new Response(requests[i], replies[i]).toString(), data, 0);
+                        if (got < expected)
+                            throw new SessionException(String.format("Failed to read %s at 0x%x", module, lo));
+
+                        ByteBuffer buffer = ByteBuffer.wrap(data, 0, expected);
+                        while (buffer.hasRemaining())
+                            channel.write(buffer);
+                    }
+
+                    progress.worked(Math.min(next, end) - current);
+                    current = next;
+                }
+            }
+
+            if (!progress.isCanceled()) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                complete = true;
+            }
+        } catch (IOException e) {
+            throw new SessionException("Failed to write " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SessionException)
+                throw (SessionException) e.getCause();
+            throw new SessionException("Failed to read " + module, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reader.shutdown();
+            if (!complete) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // keep the original error
+                }
+            }
+        }
+
+        return complete;
+    }
+
+    /**
+     * Loads an image file into a memory using its load command. The file is
+     * read by the simulator, so its path must be valid on the simulation
+     * host. Cached pages of the session become invalid.
+     * @return  Output of the load command
+     */
+    public static String load(Session session, String module, Path file, long offset) throws SessionException {
+        if (!Files.isReadable(file))
+            throw new SessionException("Cannot read " + file);
+
+        String path = file.toAbsolutePath().toString();
+        if (offset == 0)
+            return session.executeCommand(module, CMD_LOAD, path);
+        return session.executeCommand(module, CMD_LOAD, path, Long.toUnsignedString(offset));
+    }
+
+}
@@ -0,0 +1,167 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds a fast TLM global quantum by running the simulation for a short,
+ * fixed wall-clock time at each candidate value and comparing how far the
+ * simulation time advanced.
+ */
+public class QuantumTuner {
+
+    public static final long DEFAULT_BURST = 1000; // ms
+
+    public static class Result {
+
+        private double quantum;
+
+        private double simTime;
+
+        private double wallTime;
+
+        public Result(double quantum, double simTime, double wallTime) {
+            this.quantum = quantum;
+            this.simTime = simTime;
+            this.wallTime = wallTime;
+        }
+
+        public double getQuantum() {
+            return quantum;
+        }
+
+        /**
+         * Returns the simulated seconds covered by the burst.
+         */
+        public double getSimTime() {
+            return simTime;
+        }
+
+        /**
+         * Returns the wall-clock seconds the burst took.
+         */
+        public double getWallTime() {
+            return wallTime;
+        }
+
+        /**
+         * Returns simulated seconds per wall-clock second.
+         */
+        public double getSpeed() {
+            return wallTime > 0.0 ? simTime / wallTime : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("quantum %.9fs: %.6f sim/wall", quantum, getSpeed());
+        }
+
+    }
+
+    private Session session;
+
+    private double original;
+
+    private List<Result> results = new ArrayList<Result>();
+
+    public QuantumTuner(Session session) {
+        this.session = session;
+        this.original = session.getQuantum();
+    }
+
+    /**
+     * Returns the quantum the session had when the tuner was created.
+     */
+    public double getOriginalQuantum() {
+        return original;
+    }
+
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Returns the fastest result measured so far or <tt>null</tt>.
+     */
+    public Result getBest() {
+        Result best = null;
+        for (Result result : results)
+            if (best == null || result.getSpeed() > best.getSpeed())
+                best = result;
+        return best;
+    }
+
+    /**
+     * Runs the simulation for a fixed wall-clock time with the given quantum.
+     * The simulation is always stopped again, also if interrupted.
+     * @param quantum   Quantum to measure in seconds
+     * @param burst     Wall-clock duration of the run in milliseconds
+     * @return          Measured result, also added to the result list
+     */
+    public Result measure(double quantum, long burst) throws SessionException, InterruptedException {
+        if (!session.isConnected() || session.isRunning())
+            throw new SessionException("session must be connected and halted");
+
+        session.setQuantum(quantum);
+
+        double start = session.getTime();
+        long wallStart = System.nanoTime();
+        session.continueSimulation();
+        try {
+            Thread.sleep(burst);
+        } finally {
+            session.stopSimulation();
+        }
+
+        double wall = (System.nanoTime() - wallStart) / 1e9;
+        Result result = new Result(session.getQuantum(), session.getTime() - start, wall);
+        results.add(result);
+        return result;
+    }
+
+    /**
+     * Sets the session quantum back to what it was before tuning.
+     */
+    public void restore() throws SessionException {
+        if (!Double.isNaN(original))
+            session.setQuantum(original);
+    }
+
+    /**
+     * Returns logarithmically spaced candidate values between two bounds.
+     * @param lower Smallest quantum in seconds
+     * @param upper Largest quantum in seconds, the user-given bound
+     * @param count Number of candidates
+     */
+    public static double[] getCandidates(double lower, double upper, int count) {
+        if (count < 2 || lower >= upper)
+            return new double[] { upper };
+
+        double[] candidates = new double[count];
+        double factor = Math.pow(upper / lower, 1.0 / (count - 1));
+        for (int i = 0; i < count; i++)
+            candidates[i] = lower * Math.pow(factor, i);
+        candidates[count - 1] = upper; // avoid rounding beyond the bound
+        return candidates;
+    }
+
+}
@@ -21,8 +21,11 @@ package org.vcml.session;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.List;
 
 public class RemoteSerialProtocol {
 
@@ -36,7 +39,7 @@ public class RemoteSerialProtocol {
         return esc;
     }
 
-    private static int calcChecksum(String str) {
+    static int calcChecksum(String str) {
         int result = 0;
         for (int i = 0; i < str.length(); i++)
             result += (int) str.charAt(i);
@@ -48,18 +51,77 @@ public class RemoteSerialProtocol {
         return Integer.parseInt(txt, 16);
     }
 
+    static String join(String... args) {
+        StringBuilder builder = new StringBuilder();
+        for (String arg : args)
+            builder.append(arg).append(',');
+        return builder.toString();
+    }
+
+    static String packet(String message) {
+        // Packet format: $<message>#<8bit-checksum>
+        String payload = escape(message);
+        int checksum = calcChecksum(payload);
+        return "$" + payload + "#" + String.format("%02X", checksum);
+    }
+
+    /**
+     * Number of requests written to the socket before waiting for their replies.
+     * A depth of one keeps the simulator in lock-step, which is what the VCML
+     * server expects. Deeper pipelines are only safe with servers that buffer
+     * requests while a reply of theirs is still unacknowledged.
+     */
+    public static final int DEFAULT_PIPELINE_DEPTH = Integer.getInteger("vcml.session.pipeline", 1);
+
     private Socket socket;
 
+    // Reader and writer live as long as the connection, so that replies that
+    // arrive back-to-back are never lost in a discarded buffer.
+    private Reader reader;
+
+    private OutputStream writer;
+
+    private int pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+
     public RemoteSerialProtocol(String host, int port) throws SessionException {
         try {
             socket = new Socket();
             socket.setTcpNoDelay(true);
             socket.connect(new InetSocketAddress(host, port), 1000);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            writer = socket.getOutputStream();
         } catch (IOException e) {
             throw new SessionException("Failed to connect to session", e);
         }
     }
 
+    /**
+     * For subclasses that answer requests without a connection.
+     */
+    protected RemoteSerialProtocol() {
+        socket = null;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public void setPipelineDepth(int depth) {
+        pipelineDepth = Math.max(1, depth);
+    }
+
+    /**
+     * Sets how long to wait for data from the session before giving up.
+     * @param ms    Timeout in milliseconds, zero waits forever
+     */
+    public void setTimeout(int ms) throws SessionException {
+        try {
+            socket.setSoTimeout(ms);
+        } catch (IOException e) {
+            throw new SessionException("Failed to configure connection", e);
+        }
+    }
+
     public static final String NONE = "n"; /* do nothing */
     public static final String CONT = "c"; /* call sc_start */
     public static final String STOP = "a"; /* call sc_pause */
@@ -75,98 +137,166 @@ public class RemoteSerialProtocol {
     public static final String QUIT = "x"; /* quit session */
     public static final String VERS = "v"; /* version information */
 
-    public void send_char(int val) throws SessionException {
+    private void write(String data) throws IOException {
+        writer.write(data.getBytes());
+        writer.flush();
+    }
+
+    private void expectAck() throws SessionException, IOException {
+        int response = reader.read();
+        switch (response) {
+        case '+':
+            break; // all good
+        case '-':
+            throw new SessionException("Checksum error");
+        case -1:
+            throw new SessionException("Disconnected");
+        default:
+            throw new SessionException("Invalid response (" + response + ")");
+        }
+    }
+
+    // Reads the next packet, but leaves acknowledging it to the caller.
+    private String readPacket() throws SessionException, IOException {
+        StringBuilder builder = new StringBuilder();
+
+        int checksum = 0;
+        boolean inside = false;
+        int ch;
+
+        while ((ch = reader.read()) != -1) {
+            if (ch == '$') {
+                inside = true;
+            } else if (ch == '#') {
+                inside = false;
+
+                int check1 = reader.read();
+                int check2 = reader.read();
+
+                // Verify checksum. This should never fail since the transport layer assures
+                // correct transmission.
+                if (calcChecksum(check1, check2) != checksum) {
+                    write("-");
+                    throw new SessionException("Checksum mismatch");
+                }
+
+                return builder.toString();
+            } else if (inside) {
+                if (ch == '\\') {
+                    checksum = (checksum + ch) & 0xFF;
+                    ch = reader.read();
+                }
+                checksum = (checksum + ch) & 0xFF;
+                builder.append((char) ch);
+            } else {
+                // just drop characters until we read '$' again
+            }
+        }
+
+        // Unexpected end of file
+        throw new SessionException("Disconnected");
+    }
+
+    public synchronized void send_char(int val) throws SessionException {
         try {
-            socket.getOutputStream().write(val);
-            socket.getOutputStream().flush();
+            writer.write(val);
+            writer.flush();
         } catch (IOException e) {
             throw new SessionException("Failed to contact session", e);
         }
     }
 
-    public void send(String message) throws SessionException {
+    public synchronized void send(String message) throws SessionException {
         try {
-            // Packet format: $<message>#<8bit-checksum>
-            String payload = escape(message);
-            int checksum = calcChecksum(payload);
-            String packet = "$" + payload + "#" + String.format("%02X", checksum);
-            socket.getOutputStream().write(packet.getBytes());
-            socket.getOutputStream().flush();
-
-            int response = socket.getInputStream().read();
-            switch (response) {
-            case '+':
-                break; // all good
-            case '-':
-                throw new SessionException("Checksum error");
-            case -1:
-                throw new SessionException("Disconnected");
-            default:
-                throw new SessionException("Invalid response (" + response + ")");
-            }
+            write(packet(message));
+            expectAck();
         } catch (IOException e) {
             throw new SessionException("Failed to contact session", e);
         }
     }
 
-    public String recv() throws SessionException {
+    public synchronized String recv() throws SessionException {
         try {
-            InputStreamReader ireader = new InputStreamReader(socket.getInputStream());
-            BufferedReader breader = new BufferedReader(ireader);
-            StringBuilder builder = new StringBuilder();
-
-            int checksum = 0;
-            boolean inside = false;
-            int ch;
-
-            while ((ch = breader.read()) != -1) {
-                if (ch == '$') {
-                    inside = true;
-                } else if (ch == '#') {
-                    inside = false;
-                    String message = builder.toString();
-
-                    int check1 = breader.read();
-                    int check2 = breader.read();
-
-                    // Verify checksum. This should never fail since the transport layer assures
-                    // correct transmission.
-                    boolean match = (calcChecksum(check1, check2) == checksum);
-
-                    String resp = match ? "+" : "-";
-                    socket.getOutputStream().write(resp.getBytes());
-
-                    if (!match)
-                        throw new SessionException("Checksum mismatch");
-                    return message;
-                } else if (inside) {
-                    if (ch == '\\') {
-                        checksum = (checksum + ch) & 0xFF;
-                        ch = breader.read();
-                    }
-                    checksum = (checksum + ch) & 0xFF;
-                    builder.append((char) ch);
-                } else {
-                    // just drop characters until we read '$' again
-                }
-            }
+            String message = readPacket();
+            write("+");
+            return message;
         } catch (IOException e) {
             throw new SessionException("Failed to contact session", e);
         }
-
-        // Unexpected end of file
-        throw new SessionException("Disconnected");
     }
 
-    public Response command(String... args) throws SessionException {
-        String command = "";
-        for (String arg : args)
-            command += arg + ",";
-
+    public synchronized Response command(String... args) throws SessionException {
+        String command = join(args);
         send(command);
         return new Response(command, recv());
     }
 
+    /**
+     * Executes a list of commands as one burst: requests are written up to the
+     * pipeline depth at a time and the acknowledgement of a reply is carried in
+     * the same write as the next request, so the whole list costs one socket
+     * write per window instead of several per command.
+     *
+     * @param commands  Commands to execute, each given as its argument list
+     * @return          Responses in the order of <tt>commands</tt>; entries the
+     *                  simulator rejected with an error are <tt>null</tt>
+     */
+    public synchronized Response[] command(List<String[]> commands) throws SessionException {
+        String[] requests = new String[commands.size()];
+        for (int i = 0; i < requests.length; i++)
+            requests[i] = join(commands.get(i));
+
+        String[] replies = exchange(requests);
+        Response[] responses = new Response[replies.length];
+        for (int i = 0; i < replies.length; i++) {
+            try {
+                responses[i] = new Response(requests[i], replies[i]);
+            } catch (SessionException e) {
+                responses[i] = null;
+            }
+        }
+
+        return responses;
+    }
+
+    /**
+     * Burst transfer behind {@link #command(List)} working on raw messages, so
+     * that replies can be forwarded verbatim, including errors.
+     */
+    synchronized String[] exchange(String[] requests) throws SessionException {
+        String[] replies = new String[requests.length];
+        try {
+            String ack = "";
+            for (int first = 0; first < requests.length; first += pipelineDepth) {
+                int last = Math.min(first + pipelineDepth, requests.length);
+
+                StringBuilder burst = new StringBuilder(ack);
+                for (int i = first; i < last; i++)
+                    burst.append(packet(requests[i]));
+                write(burst.toString());
+
+                for (int i = first; i < last; i++) {
+                    expectAck();
+                    replies[i] = readPacket();
+
+                    // The server waits for our acknowledgement before it looks at the
+                    // next request, so only the last reply of a window can be deferred.
+                    if (i < last - 1)
+                        write("+");
+                }
+
+                ack = "+";
+            }
+
+            if (!ack.isEmpty())
+                write(ack);
+        } catch (IOException e) {
+            throw new SessionException("Failed to contact session", e);
+        }
+
+        return replies;
+    }
+
     public void close() throws SessionException {
         try {
             socket.close();
@@ -55,21 +55,21 @@ public class Response {
 
         //String[] token = response.split("(?<!\\\\),");
         List<String> token = new ArrayList<String>();
-        String buffer = "";
+        StringBuilder buffer = new StringBuilder();
         for (int i = 0; i < response.length(); i++) {
             char ch = response.charAt(i);
             if (ch == '\\')
-                buffer += response.charAt(++i);
+                buffer.append(response.charAt(++i));
             else if (ch != ',')
-                buffer += ch;
+                buffer.append(ch);
             else {
-                token.add(buffer);
-                buffer = "";
+                token.add(buffer.toString());
+                buffer.setLength(0);
             }
         }
 
-        if (!buffer.isEmpty())
-            token.add(buffer);
+        if (buffer.length() > 0)
+            token.add(buffer.toString());
 
         for (String entry : token) {
             String[] data = entry.split(":", 2);
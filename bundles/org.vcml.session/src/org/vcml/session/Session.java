@@ -18,26 +18,34 @@
 
 package org.vcml.session;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Pattern;
-
-import org.eclipse.core.runtime.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
 
 public class Session {
 
     public final static String ANNOUNCE_DIR = System.getProperty("java.io.tmpdir");
 
+    public final static int STEP_BATCH = 256;
+
+    public final static long DEFAULT_MAX_STEPS = 1000000;
+
     private String uri = "";
 
     private String host = "";
 
     private int port = 0;
 
+    private Boolean local = null;
+
     private String exec = "<unknown>";
 
     private String user = "<unknown>";
@@ -52,12 +60,30 @@ public class Session {
 
     private int deltaCycle = -1;
 
+    private double quantum = Double.NaN;
+
     private String syscVersion = "<unknown>";
 
     private String vcmlVersion = "<unknown>";
 
     private boolean running = false;
 
+    private WatchList watches = new WatchList();
+
+    private SessionMonitor monitor = null;
+
+    private StepTrace trace = null;
+
+    private SessionSnapshot snapshot = null;
+
+    private MemoryImage image = null;
+
+    private volatile long generation = 0;
+
+    private MemoryCache memory = new MemoryCache(this);
+
+    private MemoryHistory history = new MemoryHistory(this);
+
     public String getURI() {
         return uri;
     }
@@ -90,6 +116,13 @@ public class Session {
         return deltaCycle;
     }
 
+    /**
+     * Returns the TLM global quantum in seconds as last read from the session.
+     */
+    public double getQuantum() {
+        return quantum;
+    }
+
     public String getSystemCVersion() {
         return syscVersion;
     }
@@ -106,8 +139,106 @@ public class Session {
         return running;
     }
 
+    /**
+     * Returns true if this session browses a snapshot or a memory image
+     * instead of a simulator.
+     */
+    public boolean isOffline() {
+        return snapshot != null || image != null;
+    }
+
+    /**
+     * Returns true if the simulator runs on this machine and thus sees the
+     * same files. The host is only resolved once.
+     */
+    public boolean isLocal() {
+        if (isOffline())
+            return false;
+
+        if (local == null) {
+            try {
+                InetAddress address = InetAddress.getByName(host);
+                local = address.isLoopbackAddress() || NetworkInterface.getByInetAddress(address) != null;
+            } catch (IOException e) {
+                local = false;
+            }
+        }
+
+        return local;
+    }
+
+    /**
+     * Returns the memory image this session shows or <tt>null</tt>.
+     */
+    public MemoryImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the name of the memory module an image is shown as, derived
+     * from the file name.
+     */
+    public static String getImageModuleName(MemoryImage image) {
+        String file = image.getPath().getFileName().toString();
+        String base = file.contains(".") ? file.substring(0, file.lastIndexOf('.')) : file;
+        String module = base.replaceAll("[^A-Za-z0-9_]", "_");
+        return module.isEmpty() || Character.isDigit(module.charAt(0)) ? "image_" + module : module;
+    }
+
+    public SessionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns a counter that advances whenever the simulation state may have
+     * changed, e.g. after stepping or writing attributes.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the memory cache shared by all views of this session.
+     */
+    public MemoryCache getMemoryCache() {
+        return memory;
+    }
+
+    /**
+     * Returns the recorded history of watched memory ranges.
+     */
+    public MemoryHistory getMemoryHistory() {
+        return history;
+    }
+
+    RemoteSerialProtocol getProtocol() {
+        return protocol;
+    }
+
+    public WatchList getWatchList() {
+        return watches;
+    }
+
+    /**
+     * Returns the monitor that samples the simulation time while running.
+     */
+    public SessionMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Returns the samples recorded by the last multi-step run or <tt>null</tt>.
+     */
+    public StepTrace getStepTrace() {
+        return trace;
+    }
+
     @Override
     public String toString() {
+        if (snapshot != null)
+            return user + "/" + name + " from " + snapshot.getPath().getFileName();
+        if (image != null)
+            return "image " + image;
         return user + "/" + name + " at " + host + ":" + port;
     }
 
@@ -132,13 +263,34 @@ public class Session {
         vcmlVersion = respVcmlVersion.length > 0 ? respVcmlVersion[0] : "unknown";
     }
 
+    private void updateQuantum() throws SessionException {
+        Response resp = protocol.command(RemoteSerialProtocol.RDGQ);
+        quantum = Double.parseDouble(resp.toString());
+    }
+
+    // Reads time, delta cycle and all watched attributes in a single burst.
     private void updateTime() throws SessionException {
         simTime = Double.NaN;
         deltaCycle = -1;
-        Response timeResp = protocol.command(RemoteSerialProtocol.TIME);
-        simTime = Double.parseDouble(timeResp.toString());
-        Response dcycResp = protocol.command(RemoteSerialProtocol.DCYC);
-        deltaCycle = Integer.parseInt(dcycResp.toString());
+
+        List<String[]> batch = new ArrayList<String[]>();
+        batch.add(new String[] { RemoteSerialProtocol.TIME });
+        batch.add(new String[] { RemoteSerialProtocol.DCYC });
+        String[] watched = watches.appendRequests(batch);
+
+        Response[] resp = protocol.command(batch);
+        if (resp[0] == null || resp[1] == null)
+            throw new SessionException("Failed to read simulation time");
+
+        simTime = Double.parseDouble(resp[0].toString());
+        deltaCycle = Integer.parseInt(resp[1].toString());
+        watches.update(watched, resp, 2);
+    }
+
+    // Last segment of a path with either separator, ignoring trailing ones.
+    private static String getBaseName(String path) {
+        String trimmed = path.replaceAll("[/\\\\]+$", "");
+        return trimmed.substring(Math.max(trimmed.lastIndexOf('/'), trimmed.lastIndexOf('\\')) + 1);
     }
 
     public Session(String uri) throws SessionException {
@@ -153,23 +305,75 @@ public class Session {
             if (info.length > 3) {
                 exec = info[3];
 
-                Path path = new Path(exec);
-                name = path.segment(path.segmentCount() - 1);
+                name = getBaseName(exec);
             }
         }
 
         if (host.isEmpty() || port == 0)
             throw new SessionException("invalid URI: " + uri);
+
+        monitor = new SessionMonitor(host, port);
+    }
+
+    /**
+     * Creates an offline session that answers from a snapshot file.
+     */
+    public Session(SessionSnapshot snapshot) throws SessionException {
+        this(snapshot.lookup(SessionSnapshot.META_URI));
+        this.snapshot = snapshot;
+        this.uri = snapshot.getPath().toString();
+
+        String value = snapshot.lookup(SessionSnapshot.META_USER);
+        if (value != null)
+            user = value;
+        value = snapshot.lookup(SessionSnapshot.META_EXEC);
+        if (value != null)
+            exec = value;
+    }
+
+    /**
+     * Creates an offline session that shows a memory image as its only
+     * module.
+     */
+    public Session(MemoryImage image) {
+        this.image = image;
+        this.uri = image.getPath().toString();
+        this.name = image.getPath().getFileName().toString();
+        this.exec = uri;
+        this.monitor = new SessionMonitor(host, port);
+    }
+
+    /**
+     * Creates the protocol a connection talks through, depending on whether
+     * the session is live or shows a snapshot or image.
+     */
+    RemoteSerialProtocol createProtocol() throws SessionException {
+        if (image != null) {
+            image.open();
+            return new ImageProtocol(image, getImageModuleName(image));
+        }
+
+        if (snapshot != null) {
+            snapshot.open();
+            return new SnapshotProtocol(snapshot);
+        }
+
+        return new RemoteSerialProtocol(host, port);
     }
 
     public void connect() throws SessionException {
         if (isConnected())
             return;
 
-        protocol = new RemoteSerialProtocol(host, port);
-
+        protocol = createProtocol();
         updateVersion();
         updateTime();
+
+        try {
+            updateQuantum();
+        } catch (SessionException e) {
+            quantum = Double.NaN; // not supported by this session
+        }
     }
 
     public void disconnect() throws SessionException {
@@ -177,15 +381,136 @@ public class Session {
             return;
 
         hierarchy = null;
+        memory.clear();
+        history.clear();
+        monitor.stop();
         protocol.close();
         protocol = null;
+
+        // Offline sessions keep their file, but not its mapping.
+        if (image != null)
+            image.close();
+        if (snapshot != null)
+            snapshot.close();
     }
 
     public void refresh() throws SessionException {
         hierarchy = null; // forces recreation during next call to getTopLevelObjects
+        generation++;
         updateTime();
     }
 
+    /**
+     * Reads all watched attributes in a single burst without touching the
+     * simulation time or the module hierarchy.
+     */
+    public List<AttributeChange> updateWatches() throws SessionException {
+        if (!isConnected() || isRunning())
+            return watches.getChanges();
+
+        List<String[]> batch = new ArrayList<String[]>();
+        String[] watched = watches.appendRequests(batch);
+        return watches.update(watched, protocol.command(batch), 0);
+    }
+
+    /**
+     * Reads a set of attributes in a single burst of GETA commands without
+     * building the module hierarchy.
+     * @param names     Full hierarchical attribute names
+     * @return          Values in request order, null where a read failed
+     */
+    public String[] getAttributes(String... names) throws SessionException {
+        if (!isConnected() || isRunning())
+            throw new SessionException("Session " + this + " is not halted");
+
+        List<String[]> batch = new ArrayList<String[]>();
+        for (String name : names)
+            batch.add(new String[] { RemoteSerialProtocol.GETA, name });
+
+        Response[] resp = protocol.command(batch);
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            String[] value = resp[i] == null ? new String[0] : resp[i].getValues("value");
+            values[i] = value.length > 0 ? value[0] : null;
+        }
+
+        return values;
+    }
+
+    /**
+     * Writes a set of attributes in a single burst of SETA commands. The module
+     * hierarchy is dropped afterwards, since it caches attribute values.
+     * @param values    Attribute values keyed by full hierarchical name
+     * @return          Names of attributes the simulator refused to set
+     */
+    public List<String> setAttributes(Map<String, String> values) throws SessionException {
+        List<String> failed = new ArrayList<String>();
+        if (!isConnected() || isRunning()) {
+            failed.addAll(values.keySet());
+            return failed;
+        }
+
+        List<String[]> batch = new ArrayList<String[]>();
+        for (Map.Entry<String, String> entry : values.entrySet())
+            batch.add(new String[] { RemoteSerialProtocol.SETA, entry.getKey(), entry.getValue() });
+
+        Response[] resp = protocol.command(batch);
+        for (int i = 0; i < resp.length; i++)
+            if (resp[i] == null)
+                failed.add(batch.get(i)[1]);
+
+        hierarchy = null; // holds stale values now
+        generation++;
+        return failed;
+    }
+
+    /**
+     * Sets the TLM global quantum, i.e. how far processors may run ahead of
+     * the rest of the simulation. Larger values usually simulate faster.
+     * @param seconds   New quantum in seconds
+     */
+    public void setQuantum(double seconds) throws SessionException {
+        if (!isConnected() || isRunning())
+            return;
+
+        if (!(seconds > 0.0))
+            throw new SessionException("invalid quantum: " + seconds);
+
+        protocol.command(RemoteSerialProtocol.WRGQ, Double.toString(seconds));
+        updateQuantum();
+    }
+
+    /**
+     * Captures the halted session into a snapshot file that can be browsed
+     * later as an offline session.
+     * @param file      File to write, replaced if it exists
+     * @param memory    Memory ranges to include
+     */
+    public void saveSnapshot(Path file, SessionSnapshot.Range... memory) throws SessionException {
+        if (!isConnected() || isRunning())
+            throw new SessionException("Session " + this + " is not halted");
+
+        SessionSnapshot.write(this, protocol, file, memory);
+    }
+
+    /**
+     * Executes a module command without building the module hierarchy.
+     * @param module    Full hierarchical name of the module
+     * @param args      Command name followed by its arguments
+     * @return          Output of the command
+     */
+    public String executeCommand(String module, String... args) throws SessionException {
+        if (!isConnected() || isRunning())
+            throw new SessionException("Session " + this + " is not halted");
+
+        String[] request = new String[args.length + 2];
+        request[0] = RemoteSerialProtocol.EXEC;
+        request[1] = module;
+        System.arraycopy(args, 0, request, 2, args.length);
+        generation++; // commands may change the simulation state
+        return protocol.command(request).toString();
+    }
+
     public Module[] getTopLevelObjects() throws SessionException {
         if (!isConnected() || isRunning())
             return null;
@@ -201,6 +526,16 @@ public class Session {
         return hierarchy.findChild(name);
     }
 
+    // Records watched memory after the simulation has advanced. The step
+    // itself succeeded, so a failing read must not be reported as its error.
+    private void recordHistory() {
+        try {
+            history.record();
+        } catch (SessionException e) {
+            System.err.println("cannot record memory history: " + e.getMessage());
+        }
+    }
+
     public void continueSimulation() throws SessionException {
         if (!isConnected() || isRunning())
             return;
@@ -208,19 +543,27 @@ public class Session {
         protocol.send(RemoteSerialProtocol.CONT);
         running = true;
         hierarchy = null; // needs to be rebuild
+        generation++;
+
+        monitor.getSamples().clear();
+        monitor.start();
     }
 
     public void stopSimulation() throws SessionException {
         if (!isConnected() || !isRunning())
             return;
 
+        monitor.stop();
+
         protocol.send_char('a');
         String resp = protocol.recv();
         if (!resp.equals("OK"))
             throw new SessionException("Simulator responded with error : " + resp);
         running = false;
+        generation++;
 
         updateTime();
+        recordHistory();
     }
 
     public void stepSimulation() throws SessionException {
@@ -229,44 +572,281 @@ public class Session {
 
         protocol.command(RemoteSerialProtocol.STEP);
         hierarchy = null; // needs to be rebuild
+        generation++;
+
+        updateTime();
+        recordHistory();
+    }
+
+    // Sends up to STEP_BATCH steps in one pipelined burst, optionally followed
+    // by a time and attribute sample after each step.
+    private void stepBatch(int count, StepTrace samples) throws SessionException {
+        String[] names = samples != null ? samples.getNames() : new String[0];
+        int stride = samples != null ? 2 + names.length : 1;
+
+        List<String[]> batch = new ArrayList<String[]>();
+        for (int i = 0; i < count; i++) {
+            batch.add(new String[] { RemoteSerialProtocol.STEP });
+            if (samples == null)
+                continue;
+            batch.add(new String[] { RemoteSerialProtocol.TIME });
+            for (String name : names)
+                batch.add(new String[] { RemoteSerialProtocol.GETA, name });
+        }
+
+        Response[] resp = protocol.command(batch);
+        String[] values = new String[names.length];
+        for (int i = 0; i < count; i++) {
+            int base = i * stride;
+            if (resp[base] == null)
+                throw new SessionException("Simulator refused to step");
+            if (samples == null)
+                continue;
+
+            for (int j = 0; j < names.length; j++) {
+                Response value = resp[base + 2 + j];
+                String[] val = value != null ? value.getValues("value") : new String[0];
+                values[j] = val.length > 0 ? val[0] : null;
+            }
+
+            double time = resp[base + 1] != null ? Double.parseDouble(resp[base + 1].toString()) : Double.NaN;
+            samples.add(time, values);
+        }
+    }
+
+    public void stepSimulation(int count) throws SessionException {
+        stepSimulation(count, () -> false);
+    }
+
+    /**
+     * Steps the simulation several times using pipelined STEP commands. If
+     * attributes are being watched, they are sampled after every step into
+     * the trace returned by {@link #getStepTrace()}. Time, delta cycle and
+     * watches are only updated once at the end, unless the memory history is
+     * recording; then they are updated and recorded after every step.
+     * @param count     Number of steps, i.e. quanta, to simulate
+     * @param canceled  Polled before each batch of steps, ends the run early
+     * @return          Number of steps simulated
+     */
+    public int stepSimulation(int count, BooleanSupplier canceled) throws SessionException {
+        if (!isConnected() || isRunning() || count <= 0)
+            return 0;
+
+        String[] watched = watches.getNames();
+        trace = watched.length > 0 ? new StepTrace(watched) : null;
+        hierarchy = null; // needs to be rebuild
+        generation++;
+
+        if (history.isRecording()) {
+            // one record per step, so that every intermediate state can be
+            // looked at later
+            int done = 0;
+            for (; done < count && !canceled.getAsBoolean(); done++) {
+                stepBatch(1, trace);
+                if (done > 0)
+                    generation++;
+                updateTime();
+                recordHistory();
+            }
+            return done;
+        }
+
+        int done = 0;
+        while (done < count && !canceled.getAsBoolean()) {
+            int batch = Math.min(STEP_BATCH, count - done);
+            stepBatch(batch, trace);
+            done += batch;
+        }
+
+        updateTime();
+        recordHistory();
+        return done;
+    }
+
+    public boolean runSimulationFor(double duration) throws SessionException {
+        return runSimulationFor(duration, () -> false);
+    }
+
+    /**
+     * Steps the simulation until at least the given amount of simulation time
+     * has passed. The number of steps is estimated from the global quantum.
+     * The run ends early if a batch of steps does not advance simulation
+     * time, e.g. after the simulation has finished, or after twice the
+     * estimated number of steps.
+     * @param duration  Simulation time to advance in seconds
+     * @param canceled  Polled before each batch of steps, ends the run early
+     * @return          <tt>true</tt> if the full duration has passed
+     */
+    public boolean runSimulationFor(double duration, BooleanSupplier canceled) throws SessionException {
+        if (!isConnected() || isRunning() || !(duration > 0.0))
+            return false;
+
+        String[] watched = watches.getNames();
+        trace = watched.length > 0 ? new StepTrace(watched) : null;
+        hierarchy = null; // needs to be rebuild
+        generation++;
+
+        double target = simTime + duration;
+        long limit = quantum > 0.0 ? 2 * (long) Math.ceil(duration / quantum) + STEP_BATCH : DEFAULT_MAX_STEPS;
+        long done = 0;
+        while (simTime < target - 1e-12 && done < limit && !canceled.getAsBoolean()) { // ps at best
+            double remaining = target - simTime;
+            long steps = quantum > 0.0 ? (long) Math.ceil(remaining / quantum) : 1;
+            int count = (int) Math.max(1, Math.min(STEP_BATCH, Math.min(steps, limit - done)));
+
+            double before = simTime;
+            stepBatch(count, trace);
+            done += count;
+            updateTime();
+            if (!(simTime > before))
+                break; // time does not advance anymore
+        }
+
+        recordHistory();
+        return simTime >= target - 1e-12;
+    }
+
+    public ConditionResult runSimulationUntil(Condition condition, long maxSteps) throws SessionException {
+        return runSimulationUntil(condition, maxSteps, () -> false);
+    }
+
+    /**
+     * Steps the simulation one quantum at a time until a condition on
+     * attribute values holds. This is a per-step poll: every STEP is sent
+     * together with reads of the attributes the condition depends on in one
+     * pipelined burst, so a condition that holds only briefly is not missed
+     * and the simulation stops right after the first step at which it held.
+     * Each step costs one burst of 1 + n requests for n attributes.
+     * @param condition Compiled condition to evaluate after each step
+     * @param maxSteps  Step limit after which to give up
+     * @param canceled  Polled before each step, ends the run early
+     * @return          Satisfying step, steps and round trips spent
+     */
+    public ConditionResult runSimulationUntil(Condition condition, long maxSteps, BooleanSupplier canceled)
+            throws SessionException {
+        if (!isConnected() || isRunning())
+            return null;
+
+        String[] names = condition.getAttributes();
+        String[] values = new String[names.length];
+        int depth = protocol.getPipelineDepth();
+        hierarchy = null; // needs to be rebuild
+        generation++;
+        trace = null;
+
+        List<String[]> batch = new ArrayList<String[]>();
+        batch.add(new String[] { RemoteSerialProtocol.STEP });
+        for (String name : names)
+            batch.add(new String[] { RemoteSerialProtocol.GETA, name });
+        int burst = (batch.size() + depth - 1) / depth;
+
+        long steps = 0;
+        boolean satisfied = false;
+        int roundTrips = 0;
+        boolean stopped = false;
+
+        while (steps < maxSteps && !satisfied && !(stopped = canceled.getAsBoolean())) {
+            Response[] resp = protocol.command(batch);
+            roundTrips += burst;
+            if (resp[0] == null)
+                throw new SessionException("Simulator refused to step");
+
+            for (int j = 0; j < names.length; j++) {
+                Response value = resp[1 + j];
+                String[] val = value != null ? value.getValues("value") : new String[0];
+                values[j] = val.length > 0 ? val[0] : null;
+            }
+
+            steps++;
+            satisfied = condition.test(values);
+        }
 
         updateTime();
+        recordHistory();
+        roundTrips += (2 + watches.getNames().length + depth - 1) / depth;
+        return new ConditionResult(condition, satisfied, stopped, satisfied ? steps : 0, steps, roundTrips, simTime);
+    }
+
+    public WatchpointResult runSimulationUntilChanged(Watchpoint watchpoint, long maxSteps)
+            throws SessionException {
+        return runSimulationUntilChanged(watchpoint, maxSteps, () -> false);
+    }
+
+    /**
+     * Steps the simulation one quantum at a time until any byte of the
+     * watched memory ranges changes. This is a per-step poll: every STEP is
+     * sent together with reads of the watched pieces in one pipelined burst
+     * and the simulation stops right after the step that changed the memory.
+     * Each step costs one burst of 1 + n requests for n watched pieces.
+     * @param watchpoint    Memory ranges to watch
+     * @param maxSteps      Step limit after which to give up
+     * @param canceled      Polled before each step, ends the run early
+     * @return              Changed address, steps and round trips spent
+     */
+    public WatchpointResult runSimulationUntilChanged(Watchpoint watchpoint, long maxSteps, BooleanSupplier canceled)
+            throws SessionException {
+        if (!isConnected() || isRunning())
+            return null;
+
+        int depth = protocol.getPipelineDepth();
+        watchpoint.prepare(this, protocol);
+        String[] reads = watchpoint.getRequests();
+        String[] requests = new String[1 + reads.length];
+        requests[0] = RemoteSerialProtocol.join(RemoteSerialProtocol.STEP);
+        System.arraycopy(reads, 0, requests, 1, reads.length);
+        int burst = (requests.length + depth - 1) / depth;
+        hierarchy = null; // needs to be rebuild
+        generation++;
+        trace = null;
+
+        long steps = 0;
+        int changed = -1;
+        long address = 0;
+        int roundTrips = (reads.length + depth - 1) / depth;
+        boolean stopped = false;
+
+        while (steps < maxSteps && changed < 0 && !(stopped = canceled.getAsBoolean())) {
+            String[] replies = protocol.exchange(requests);
+            roundTrips += burst;
+            if (!replies[0].startsWith("OK"))
+                throw new SessionException("Simulator refused to step");
+
+            steps++;
+            changed = watchpoint.compare(replies, 1);
+            if (changed >= 0)
+                address = watchpoint.locate(changed, replies[1 + changed]);
+        }
+
+        updateTime();
+        recordHistory();
+        roundTrips += (2 + watches.getNames().length + depth - 1) / depth;
+        return new WatchpointResult(watchpoint, changed >= 0 ? watchpoint.getPiece(changed) : null, stopped,
+                address, changed >= 0 ? steps : 0, steps, roundTrips, simTime);
     }
 
     public void quitSimulation() throws SessionException {
         if (!isConnected())
             return;
 
+        monitor.stop();
         protocol.send(RemoteSerialProtocol.QUIT);
         running = false;
     }
 
+    /**
+     * Returns the sessions announced in {@link #ANNOUNCE_DIR} that accept
+     * connections. Announce files are probed in parallel.
+     */
     public static List<Session> getAvailableSessions() {
         List<Session> avail = new ArrayList<Session>();
 
-        File directory = new File(ANNOUNCE_DIR);
-        File[] files = directory.listFiles(new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                return Pattern.matches("vcml_session_[0-9]+", name);
-            }
-        });
-
-        for (File it : files) {
-            try {
-                Scanner scanner = new Scanner(it);
-                try {
-                    String uri = scanner.nextLine();
-                    Session session = new Session(uri);
-                    if (!avail.contains(session))
-                        avail.add(session);
-                } catch (SessionException ex) {
-                    System.err.println(ex.getMessage());
-                } finally {
-                    scanner.close();
-                }
-            } catch (FileNotFoundException e) {
-                /* nothing to do */
-            }
+        ExecutorService executor = Executors.newFixedThreadPool(SessionDiscovery.PROBE_THREADS);
+        try {
+            for (Session session : SessionDiscovery.scan(Paths.get(ANNOUNCE_DIR), executor).values())
+                if (!avail.contains(session))
+                    avail.add(session);
+        } finally {
+            executor.shutdown();
         }
 
         return avail;
@@ -0,0 +1,270 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies the same operation to many sessions at once. Every session gets its
+ * own I/O thread, so operations on one session run in order while different
+ * sessions proceed concurrently and a slow or hung simulator does not hold
+ * up the others. While an operation is in flight the session must not be
+ * used from any other thread, callers check {@link #isBusy(Session)} before
+ * touching it. Lanes and status are keyed by session URI.
+ */
+public class SessionController {
+
+    public static final String OP_QUIT = "quit";
+
+    public interface Operation {
+        /**
+         * Performs the operation on one session.
+         * @return  Output to report, may be <tt>null</tt>
+         */
+        String apply(Session session) throws SessionException;
+    }
+
+    public interface Listener {
+        /**
+         * Called from the I/O thread of a session when an operation is done.
+         */
+        void operationDone(SessionStatus status);
+    }
+
+    private Map<String, ExecutorService> lanes = new HashMap<String, ExecutorService>();
+
+    private Map<String, SessionStatus> status = new HashMap<String, SessionStatus>();
+
+    private List<Listener> listeners = new ArrayList<Listener>();
+
+    private Map<String, Integer> busy = new HashMap<String, Integer>();
+
+    private int pending = 0;
+
+    private synchronized ExecutorService getLane(Session session) {
+        ExecutorService lane = lanes.get(session.getURI());
+        if (lane == null) {
+            lane = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "vcml-control-" + session.getHost() + ":" + session.getPort());
+                thread.setDaemon(true);
+                return thread;
+            });
+            lanes.put(session.getURI(), lane);
+        }
+
+        return lane;
+    }
+
+    private void report(SessionStatus result) {
+        List<Listener> targets;
+        synchronized (this) {
+            status.put(result.getSession().getURI(), result);
+            targets = new ArrayList<Listener>(listeners);
+        }
+
+        for (Listener listener : targets)
+            listener.operationDone(result);
+    }
+
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the status reported by the last operation on a session.
+     */
+    public synchronized SessionStatus getStatus(Session session) {
+        return status.get(session.getURI());
+    }
+
+    /**
+     * Returns the number of operations that have not finished yet.
+     */
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    /**
+     * Tells if operations on a session have been submitted but not finished.
+     */
+    public synchronized boolean isBusy(Session session) {
+        return busy.containsKey(session.getURI());
+    }
+
+    /**
+     * Starts an operation on each session on its own I/O thread.
+     * @param sessions  Sessions to operate on
+     * @param name      Name of the operation used in status reports
+     * @param operation What to do with each session
+     * @return          One future per session, in order
+     */
+    public List<Future<SessionStatus>> submit(Collection<Session> sessions, String name, Operation operation) {
+        List<Future<SessionStatus>> futures = new ArrayList<Future<SessionStatus>>();
+        for (Session session : sessions) {
+            synchronized (this) {
+                pending++;
+                busy.merge(session.getURI(), 1, Integer::sum);
+            }
+
+            futures.add(getLane(session).submit(() -> {
+                long start = System.nanoTime();
+                String output = null;
+                String error = null;
+                try {
+                    output = operation.apply(session);
+                } catch (SessionException | RuntimeException e) {
+                    error = e.getMessage() != null ? e.getMessage() : e.toString();
+                    try {
+                        if (session.isConnected())
+                            session.disconnect();
+                    } catch (SessionException ex) {
+                        // ignore, session is already erroneous
+                    }
+                } finally {
+                    synchronized (this) {
+                        pending--;
+                        busy.computeIfPresent(session.getURI(), (uri, n) -> n > 1 ? n - 1 : null);
+                    }
+                }
+
+                SessionStatus result = new SessionStatus(session, name, output, error,
+                        (System.nanoTime() - start) / 1000000);
+                report(result);
+                return result;
+            }));
+        }
+
+        return futures;
+    }
+
+    /**
+     * Runs an operation on all sessions and waits for them to finish.
+     * @return  Status of each session, in order
+     */
+    public List<SessionStatus> invoke(Collection<Session> sessions, String name, Operation operation)
+            throws InterruptedException {
+        List<SessionStatus> results = new ArrayList<SessionStatus>();
+        for (Future<SessionStatus> future : submit(sessions, name, operation)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause()); // operations report their own errors
+            }
+        }
+
+        return Collections.unmodifiableList(results);
+    }
+
+    public List<Future<SessionStatus>> connect(Collection<Session> sessions) {
+        return submit(sessions, "connect", s -> {
+            s.connect();
+            return null;
+        });
+    }
+
+    public List<Future<SessionStatus>> disconnect(Collection<Session> sessions) {
+        return submit(sessions, "disconnect", s -> {
+            s.disconnect();
+            return null;
+        });
+    }
+
+    public List<Future<SessionStatus>> run(Collection<Session> sessions) {
+        return submit(sessions, "run", s -> {
+            s.connect();
+            s.continueSimulation();
+            return null;
+        });
+    }
+
+    public List<Future<SessionStatus>> stop(Collection<Session> sessions) {
+        return submit(sessions, "stop", s -> {
+            s.stopSimulation();
+            return null;
+        });
+    }
+
+    public List<Future<SessionStatus>> step(Collection<Session> sessions, int count) {
+        return submit(sessions, "step " + count, s -> {
+            s.connect();
+            s.stepSimulation(count);
+            return null;
+        });
+    }
+
+    public List<Future<SessionStatus>> quit(Collection<Session> sessions) {
+        return submit(sessions, OP_QUIT, s -> {
+            s.connect();
+            s.stopSimulation();
+            s.quitSimulation();
+            s.disconnect();
+            return null;
+        });
+    }
+
+    /**
+     * Sets the same attribute on all sessions.
+     * @param name  Full hierarchical name of the attribute
+     * @param value New value
+     */
+    public List<Future<SessionStatus>> setAttribute(Collection<Session> sessions, String name, String value) {
+        return submit(sessions, "set " + name, s -> {
+            s.connect();
+            if (!s.setAttributes(Collections.singletonMap(name, value)).isEmpty())
+                throw new SessionException("cannot set " + name + " to " + value);
+            return null;
+        });
+    }
+
+    /**
+     * Executes the same module command on all sessions.
+     * @param module    Full hierarchical name of the module
+     * @param args      Command name followed by its arguments
+     */
+    public List<Future<SessionStatus>> execute(Collection<Session> sessions, String module, String... args) {
+        return submit(sessions, module + " " + String.join(" ", args), s -> {
+            s.connect();
+            return s.executeCommand(module, args);
+        });
+    }
+
+    /**
+     * Stops all I/O threads; operations still queued are dropped.
+     */
+    public synchronized void shutdown() {
+        for (ExecutorService lane : lanes.values())
+            lane.shutdownNow();
+        lanes.clear();
+        busy.clear();
+    }
+
+}
@@ -0,0 +1,381 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Finds running sessions through the announce files they leave in the
+ * temporary directory. The directory is watched for created and deleted
+ * files, so only changes are processed, and every announced endpoint is
+ * probed for a listening socket before it is reported. Probes run in
+ * parallel with a short timeout, so stale announce files of crashed
+ * simulations cost little and never show up as sessions. A simulator may
+ * announce itself before its socket listens, so a failed probe is retried a
+ * few times and every rescan probes all files not yet reported again.
+ */
+public class SessionDiscovery implements Runnable {
+
+    public interface Listener {
+        /**
+         * Called from a discovery thread when a live session was announced.
+         */
+        void sessionAppeared(Session session);
+
+        /**
+         * Called from a discovery thread when an announce file was removed.
+         */
+        void sessionDisappeared(Session session);
+    }
+
+    public static final Pattern ANNOUNCE_FILE = Pattern.compile("vcml_session_[0-9]+");
+
+    public static final String ANNOUNCE_GLOB = "vcml_session_*";
+
+    public static final int PROBE_TIMEOUT = 250; // ms
+
+    public static final int PROBE_THREADS = 8;
+
+    public static final int PROBE_RETRIES = 10;
+
+    public static final int PROBE_RETRY_DELAY = 500; // ms
+
+    private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "vcml-discovery");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private Path directory;
+
+    private Listener listener;
+
+    private ScheduledExecutorService probes = null;
+
+    // Rescans wait for their probes, so they must not occupy probe threads.
+    // A single thread also keeps concurrent rescan requests in order.
+    private ExecutorService rescans = null;
+
+    private Map<Path, Session> known = new HashMap<Path, Session>();
+
+    private WatchService watcher = null;
+
+    private Thread thread = null;
+
+    /**
+     * Reads the session URI from an announce file.
+     * @return  The announced session or <tt>null</tt> if unreadable
+     */
+    public static Session readAnnounceFile(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String uri = reader.readLine();
+            return uri != null ? new Session(uri.trim()) : null;
+        } catch (IOException e) {
+            return null; // removed or still being written
+        } catch (SessionException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether something is listening at the session endpoint. The
+     * connection is closed again right away.
+     */
+    public static boolean probe(Session session, int timeout) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(session.getHost(), session.getPort()), timeout);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lists announce files without reading the names of unrelated files into
+     * memory first.
+     */
+    public static List<Path> findAnnounceFiles(Path directory) {
+        List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, ANNOUNCE_GLOB)) {
+            for (Path file : stream)
+                if (ANNOUNCE_FILE.matcher(file.getFileName().toString()).matches())
+                    files.add(file);
+        } catch (IOException e) {
+            System.err.println("cannot list " + directory + ": " + e.getMessage());
+        }
+
+        return files;
+    }
+
+    /**
+     * Reads and probes all announce files in parallel.
+     * @param directory Directory holding the announce files
+     * @return          Live sessions keyed by announce file
+     */
+    public static Map<Path, Session> scan(Path directory, ExecutorService executor) {
+        Map<Path, Future<Session>> pending = new HashMap<Path, Future<Session>>();
+        for (Path file : findAnnounceFiles(directory)) {
+            pending.put(file, executor.submit(() -> {
+                Session session = readAnnounceFile(file);
+                return session != null && probe(session, PROBE_TIMEOUT) ? session : null;
+            }));
+        }
+
+        Map<Path, Session> live = new HashMap<Path, Session>();
+        for (Map.Entry<Path, Future<Session>> entry : pending.entrySet()) {
+            try {
+                Session session = entry.getValue().get();
+                if (session != null)
+                    live.put(entry.getKey(), session);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                System.err.println(e.getCause());
+            }
+        }
+
+        return live;
+    }
+
+    public SessionDiscovery(String directory, Listener listener) {
+        this.directory = Paths.get(directory);
+        this.listener = listener;
+    }
+
+    public boolean isActive() {
+        return thread != null;
+    }
+
+    // Runs a task unless discovery has been stopped in the meantime.
+    private static void submit(ExecutorService executor, Runnable task) {
+        try {
+            if (executor != null)
+                executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            // stopped
+        }
+    }
+
+    private synchronized ScheduledExecutorService getProbes() {
+        return probes;
+    }
+
+    private synchronized ExecutorService getRescans() {
+        return rescans;
+    }
+
+    private void appeared(Path file, int retries) {
+        submit(getProbes(), () -> {
+            Session session = readAnnounceFile(file);
+            if (session == null || !probe(session, PROBE_TIMEOUT)) {
+                if (retries > 0 && Files.exists(file))
+                    retry(file, retries - 1);
+                return;
+            }
+
+            synchronized (this) {
+                if (session.equals(known.get(file)))
+                    return;
+                known.put(file, session);
+            }
+
+            listener.sessionAppeared(session);
+        });
+    }
+
+    // Probes again later, e.g. when the socket was not listening yet.
+    private void retry(Path file, int retries) {
+        try {
+            ScheduledExecutorService executor = getProbes();
+            if (executor != null)
+                executor.schedule(() -> appeared(file, retries), PROBE_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped
+        }
+    }
+
+    private void disappeared(Path file) {
+        Session session;
+        synchronized (this) {
+            session = known.remove(file);
+        }
+
+        if (session != null)
+            listener.sessionDisappeared(session);
+    }
+
+    /**
+     * Scans the directory again, e.g. after the watch queue overflowed, and
+     * reports all changes since the last scan.
+     */
+    public void rescan() {
+        ExecutorService executor = getProbes();
+        if (executor == null)
+            return;
+
+        Map<Path, Session> live;
+        try {
+            live = scan(directory, executor);
+        } catch (RejectedExecutionException e) {
+            return; // stopped while scanning
+        }
+
+        List<Path> gone = new ArrayList<Path>();
+        synchronized (this) {
+            for (Path file : known.keySet())
+                if (!live.containsKey(file))
+                    gone.add(file);
+        }
+
+        for (Path file : gone)
+            disappeared(file);
+
+        for (Map.Entry<Path, Session> entry : live.entrySet()) {
+            synchronized (this) {
+                if (entry.getValue().equals(known.get(entry.getKey())))
+                    continue;
+                known.put(entry.getKey(), entry.getValue());
+            }
+
+            listener.sessionAppeared(entry.getValue());
+        }
+    }
+
+    /**
+     * Queues a rescan on the discovery threads and returns right away.
+     */
+    public void requestRescan() {
+        submit(getRescans(), this::rescan);
+    }
+
+    /**
+     * Starts watching the announce directory and reports the sessions that
+     * are already running. Falls back to a single scan if the file system
+     * cannot be watched.
+     */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+
+        if (probes == null)
+            probes = Executors.newScheduledThreadPool(PROBE_THREADS, DAEMON_THREADS);
+        if (rescans == null)
+            rescans = Executors.newSingleThreadExecutor(DAEMON_THREADS);
+
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            System.err.println("cannot watch " + directory + ": " + e.getMessage());
+            watcher = null;
+        }
+
+        if (watcher != null) {
+            thread = DAEMON_THREADS.newThread(this);
+            thread.start();
+        }
+
+        requestRescan();
+    }
+
+    public synchronized void stop() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                // ignore, we are shutting down
+            }
+        }
+
+        if (probes != null)
+            probes.shutdownNow();
+        if (rescans != null)
+            rescans.shutdownNow();
+
+        watcher = null;
+        thread = null;
+        probes = null;
+        rescans = null;
+    }
+
+    @Override
+    public void run() {
+        WatchService service = watcher;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        requestRescan();
+                        continue;
+                    }
+
+                    Path name = (Path) event.context();
+                    if (!ANNOUNCE_FILE.matcher(name.toString()).matches())
+                        continue;
+
+                    Path file = directory.resolve(name);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+                        disappeared(file);
+                    else
+                        appeared(file, PROBE_RETRIES);
+                }
+
+                if (!key.reset())
+                    break;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+}
@@ -0,0 +1,498 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one session connection among several local clients. The gateway
+ * owns the only connection to the simulator and listens on the loopback
+ * interface, speaking the same packet protocol, so any client, including
+ * {@link Session} itself, can connect to it as if it were the simulator.
+ * <p>
+ * Requests of all clients are collected by a single dispatcher and sent to
+ * the simulator as pipelined bursts. Replies to read-only requests are kept
+ * in a cache stamped with a generation that advances with every request
+ * that may change the simulation (step, continue, stop, attribute writes,
+ * commands), so identical reads from several clients cost one round trip
+ * per generation.
+ */
+public class SessionGateway implements Runnable {
+
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    // Longest wait for a reply from the simulator before the gateway gives
+    // up on it, so that a silent simulator cannot block the dispatcher.
+    public static final int UPSTREAM_TIMEOUT = 30000; // ms
+
+    // Local answer to requests that arrive while the simulation is running.
+    private static final String REPLY_RUNNING = "ERROR,simulation is running";
+
+    // Requests that never change simulation state and whose replies can be
+    // reused until the next generation.
+    private static final Set<String> CACHEABLE = new HashSet<String>(Arrays.asList(RemoteSerialProtocol.GETA,
+            RemoteSerialProtocol.TIME, RemoteSerialProtocol.DCYC, RemoteSerialProtocol.RDGQ,
+            RemoteSerialProtocol.INFO, RemoteSerialProtocol.VERS));
+
+    private class Client implements Runnable {
+
+        private Socket socket;
+
+        private OutputStream output;
+
+        public Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.socket.setTcpNoDelay(true);
+            this.output = socket.getOutputStream();
+        }
+
+        // Every client packet is answered with an acknowledgement directly
+        // followed by the reply, so that pipelining clients see them in order.
+        public void reply(String ack, String message) {
+            String data = message == null ? ack : ack + RemoteSerialProtocol.packet(message);
+            synchronized (this) {
+                try {
+                    output.write(data.getBytes(StandardCharsets.ISO_8859_1));
+                    output.flush();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputStream input = new BufferedInputStream(socket.getInputStream());
+                StringBuilder message = new StringBuilder();
+                boolean inside = false;
+                int checksum = 0;
+                int ch;
+
+                while ((ch = input.read()) != -1) {
+                    if (ch == '$') {
+                        message.setLength(0);
+                        checksum = 0;
+                        inside = true;
+                    } else if (inside && ch == '#') {
+                        inside = false;
+                        String check = "" + (char) input.read() + (char) input.read();
+                        try {
+                            if (Integer.parseInt(check, 16) != checksum) {
+                                reply("-", null);
+                                continue;
+                            }
+                        } catch (NumberFormatException e) {
+                            reply("-", null);
+                            continue;
+                        }
+
+                        queue.add(new Request(this, message.toString()));
+                    } else if (inside) {
+                        checksum = (checksum + ch) & 0xff;
+                        if (ch == '\\') {
+                            ch = input.read();
+                            checksum = (checksum + ch) & 0xff;
+                        }
+                        message.append((char) ch);
+                    } else if (ch == STOP_CHAR || ch == 0x03) {
+                        queue.add(new Request(this, null));
+                    } else {
+                        // acknowledgements of our replies, nothing to do
+                    }
+                }
+            } catch (IOException e) {
+                // client went away
+            } finally {
+                close();
+                synchronized (clients) {
+                    clients.remove(this);
+                }
+            }
+        }
+    }
+
+    private static class Request {
+        public final Client client;
+        public final String message; // null for a stop request
+
+        public Request(Client client, String message) {
+            this.client = client;
+            this.message = message;
+        }
+
+        public String getCode() {
+            int idx = message.indexOf(',');
+            return idx < 0 ? message : message.substring(0, idx);
+        }
+    }
+
+    private static class CacheEntry {
+        public final long generation;
+        public final String reply;
+
+        public CacheEntry(long generation, String reply) {
+            this.generation = generation;
+            this.reply = reply;
+        }
+    }
+
+    private static final int STOP_CHAR = RemoteSerialProtocol.STOP.charAt(0);
+
+    private RemoteSerialProtocol upstream;
+
+    private ServerSocket server = null;
+
+    private Thread dispatcher = null;
+
+    private final List<Client> clients = new ArrayList<Client>();
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+    private final Map<String, CacheEntry> cache;
+
+    private volatile long generation = 0;
+
+    private volatile boolean running = false;
+
+    private volatile SessionException error = null;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong forwarded = new AtomicLong();
+
+    private final AtomicLong bursts = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    public SessionGateway(String host, int port) throws SessionException {
+        this(new RemoteSerialProtocol(host, port), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param upstream  Connection to the simulator, owned by the gateway
+     * @param cacheSize Maximum number of cached replies
+     */
+    public SessionGateway(RemoteSerialProtocol upstream, final int cacheSize) {
+        this.upstream = upstream;
+        this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Starts serving clients on the loopback interface.
+     * @param port  Local port to listen on, zero picks a free one
+     * @return      Port the gateway listens on
+     */
+    public synchronized int start(int port) throws SessionException {
+        if (server != null)
+            return server.getLocalPort();
+
+        try {
+            upstream.setTimeout(UPSTREAM_TIMEOUT);
+            server = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new SessionException("Failed to open gateway port " + port, e);
+        }
+
+        dispatcher = new Thread(this, "vcml-gateway");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "vcml-gateway-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        return server.getLocalPort();
+    }
+
+    /**
+     * Disconnects all clients and closes the connection to the simulator.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (server == null)
+                return;
+
+            try {
+                server.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+
+            server = null;
+            dispatcher.interrupt();
+        }
+
+        synchronized (clients) {
+            for (Client client : clients)
+                client.close();
+            clients.clear();
+        }
+
+        try {
+            upstream.close();
+        } catch (SessionException e) {
+            // closing anyway
+        }
+    }
+
+    public synchronized boolean isActive() {
+        return server != null && error == null;
+    }
+
+    public synchronized int getPort() {
+        return server == null ? 0 : server.getLocalPort();
+    }
+
+    public String getURI() {
+        return "localhost:" + getPort();
+    }
+
+    public int getNumClients() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+
+    /**
+     * Returns the error that broke the connection to the simulator, if any.
+     */
+    public SessionException getError() {
+        return error;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /** Number of requests received from all clients. */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /** Number of requests that were sent on to the simulator. */
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    /** Number of bursts used to forward requests. */
+    public long getBursts() {
+        return bursts.get();
+    }
+
+    /** Number of requests answered from the cache. */
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    private void accept() {
+        ServerSocket socket;
+        synchronized (this) {
+            socket = server;
+        }
+
+        while (socket != null && !socket.isClosed()) {
+            try {
+                Client client = new Client(socket.accept());
+                synchronized (clients) {
+                    clients.add(client);
+                }
+
+                Thread thread = new Thread(client, "vcml-gateway-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (SocketException e) {
+                break; // server socket closed
+            } catch (IOException e) {
+                // failed client, keep accepting
+            }
+        }
+    }
+
+    private static boolean isCacheable(Request request) {
+        return CACHEABLE.contains(request.getCode());
+    }
+
+    // Sends the pending requests as one burst and answers their clients.
+    // Duplicate reads within the burst share one upstream request.
+    private void flush(List<Request> pending) throws SessionException {
+        if (pending.isEmpty())
+            return;
+
+        List<String> messages = new ArrayList<String>();
+        Map<String, Integer> shared = new HashMap<String, Integer>();
+        int[] slot = new int[pending.size()];
+
+        for (int i = 0; i < slot.length; i++) {
+            Request request = pending.get(i);
+            if (isCacheable(request)) {
+                Integer idx = shared.get(request.message);
+                if (idx != null) {
+                    slot[i] = idx;
+                    hits.incrementAndGet();
+                    continue;
+                }
+                shared.put(request.message, messages.size());
+            } else {
+                shared.clear(); // reads after this one may see new state
+            }
+
+            slot[i] = messages.size();
+            messages.add(request.message);
+        }
+
+        String[] replies = upstream.exchange(messages.toArray(new String[messages.size()]));
+        forwarded.addAndGet(replies.length);
+        bursts.incrementAndGet();
+
+        long gen = generation;
+        for (int i = 0; i < slot.length; i++) {
+            Request request = pending.get(i);
+            String reply = replies[slot[i]];
+            if (isCacheable(request)) {
+                if (!reply.startsWith("ERROR"))
+                    cache.put(request.message, new CacheEntry(gen, reply));
+            } else {
+                gen = ++generation;
+            }
+
+            request.client.reply("+", reply);
+        }
+
+        pending.clear();
+    }
+
+    // Handles requests that do not follow the request/reply pattern.
+    private void special(Request request) throws SessionException {
+        if (request.message == null) {
+            if (running) {
+                upstream.send_char(STOP_CHAR);
+                String reply = upstream.recv();
+                running = false;
+                generation++;
+                request.client.reply("", reply);
+            } else {
+                request.client.reply("", "OK"); // already stopped by someone else
+            }
+        } else {
+            upstream.send(request.message);
+            generation++;
+            if (request.getCode().equals(RemoteSerialProtocol.CONT))
+                running = true;
+            request.client.reply("+", null);
+            if (request.getCode().equals(RemoteSerialProtocol.QUIT))
+                stop(); // simulator closes the connection
+        }
+    }
+
+    private void dispatch(List<Request> batch) throws SessionException {
+        List<Request> pending = new ArrayList<Request>();
+        boolean modified = false; // pending requests may change state
+        for (Request request : batch) {
+            requests.incrementAndGet();
+
+            if (request.message == null || request.getCode().equals(RemoteSerialProtocol.CONT)
+                    || request.getCode().equals(RemoteSerialProtocol.QUIT)) {
+                flush(pending);
+                modified = false;
+                special(request);
+                continue;
+            }
+
+            // the simulator does not answer while running, forwarding would
+            // block the dispatcher and with it any stop request queued behind
+            if (running) {
+                request.client.reply("+", REPLY_RUNNING);
+                continue;
+            }
+
+            if (!modified && isCacheable(request)) {
+                CacheEntry entry = cache.get(request.message);
+                if (entry != null && entry.generation == generation) {
+                    hits.incrementAndGet();
+                    request.client.reply("+", entry.reply);
+                    continue;
+                }
+            }
+
+            modified |= !isCacheable(request);
+            pending.add(request);
+        }
+
+        flush(pending);
+    }
+
+    @Override
+    public void run() {
+        List<Request> batch = new ArrayList<Request>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                dispatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (SessionException e) {
+            error = e;
+            stop();
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples simulation time and delta cycle while the simulation is running.
+ * The main connection is blocked in CONT until the simulation is stopped, so
+ * the monitor talks to the simulator through a secondary connection. If the
+ * simulator does not serve a second client, the monitor quietly stops and no
+ * samples are recorded.
+ */
+public class SessionMonitor implements Runnable {
+
+    public static final int DEFAULT_RATE = Integer.getInteger("vcml.session.monitor.rate", 10);
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public static final int TIMEOUT = 500; // ms
+
+    private String host;
+
+    private int port;
+
+    private int rate = DEFAULT_RATE;
+
+    private volatile String[] counters = new String[0];
+
+    private volatile TimeSampleBuffer samples = new TimeSampleBuffer(DEFAULT_CAPACITY);
+
+    private volatile Thread thread = null;
+
+    private volatile String error = null;
+
+    public SessionMonitor(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public TimeSampleBuffer getSamples() {
+        return samples;
+    }
+
+    public String[] getCounters() {
+        return counters.clone();
+    }
+
+    /**
+     * Sets integer attributes to be sampled together with the time, e.g. the
+     * instruction counters of processors. Takes effect on the next start and
+     * replaces the sample buffer if the number of counters changes.
+     * @param names Full hierarchical names of the attributes
+     */
+    public synchronized void setCounters(String... names) {
+        if (names.length != counters.length)
+            samples = new TimeSampleBuffer(DEFAULT_CAPACITY, names.length);
+        counters = names.clone();
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * Sets the number of samples taken per second; zero disables the monitor.
+     */
+    public void setRate(int rate) {
+        this.rate = Math.max(0, rate);
+    }
+
+    public boolean isActive() {
+        return thread != null;
+    }
+
+    /**
+     * Returns why the monitor stopped on its own or <tt>null</tt>.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public synchronized void start() {
+        if (thread != null || rate == 0)
+            return;
+
+        error = null;
+        thread = new Thread(this, "vcml-monitor-" + host + ":" + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        Thread current = thread;
+        thread = null;
+        if (current == null)
+            return;
+
+        current.interrupt();
+        try {
+            current.join(TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        Thread self = Thread.currentThread();
+        RemoteSerialProtocol protocol = null;
+
+        TimeSampleBuffer buffer = samples;
+        String[] names = counters;
+        long[] values = new long[names.length];
+
+        List<String[]> batch = new ArrayList<String[]>();
+        batch.add(new String[] { RemoteSerialProtocol.TIME });
+        batch.add(new String[] { RemoteSerialProtocol.DCYC });
+        for (String name : names)
+            batch.add(new String[] { RemoteSerialProtocol.GETA, name });
+
+        try {
+            protocol = new RemoteSerialProtocol(host, port);
+            protocol.setTimeout(TIMEOUT);
+
+            while (thread == self) {
+                long start = System.nanoTime();
+                Response[] resp = protocol.command(batch);
+                if (resp[0] == null || resp[1] == null)
+                    throw new SessionException("Simulator refused to report time");
+
+                for (int i = 0; i < names.length; i++) {
+                    String[] value = resp[i + 2] != null ? resp[i + 2].getValues("value") : new String[0];
+                    values[i] = value.length > 0 ? Long.parseLong(value[0]) : 0;
+                }
+
+                buffer.add(Double.parseDouble(resp[0].toString()), Long.parseLong(resp[1].toString()), start, values);
+
+                long period = 1000000000L / Math.max(1, rate);
+                long remaining = (start + period - System.nanoTime()) / 1000000;
+                if (remaining > 0)
+                    Thread.sleep(remaining);
+            }
+        } catch (SessionException | NumberFormatException e) {
+            error = e.getMessage();
+        } catch (InterruptedException e) {
+            // stopped
+        } finally {
+            if (protocol != null) {
+                try {
+                    protocol.close();
+                } catch (SessionException e) {
+                    // ignore, monitor is going away
+                }
+            }
+
+            synchronized (this) {
+                if (thread == self)
+                    thread = null;
+            }
+        }
+    }
+
+}
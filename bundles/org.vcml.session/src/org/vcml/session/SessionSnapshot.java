@@ -0,0 +1,480 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only capture of a halted session. A snapshot records the replies of
+ * the simulator to all requests needed to browse it - version, time, object
+ * info, attribute values and symbol lists - plus the raw contents of
+ * selected memory ranges. It is opened as an offline {@link Session} whose
+ * requests are answered from the file.
+ * <p>
+ * The file is memory-mapped and only its header is read on open. Replies are
+ * located through a hash index sorted by key and decoded when requested. As
+ * the file is mapped as one buffer, snapshots are limited to 2 GiB:
+ * 
+ * <pre>
+ * header  magic "VCMLSNAP", version, entries, index offset,
+ *         ranges, range table offset
+ * data    key and reply bytes of every entry, raw memory
+ * index   entries * (key hash, key length, reply length, data offset)
+ * ranges  ranges * (module, address, length, data offset)
+ * </pre>
+ */
+public class SessionSnapshot {
+
+    public static final String EXTENSION = "vsnap";
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = "VCMLSNAP".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int HEADER_SIZE = 8 + 4 + 4 + 8 + 4 + 8;
+
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 4 + 8;
+
+    // Keys of session properties; protocol requests never start with '#'.
+    static final String META_URI = "#uri";
+    static final String META_USER = "#user";
+    static final String META_EXEC = "#exec";
+    static final String META_CREATED = "#created";
+
+    /**
+     * Memory of a module to include into a snapshot.
+     */
+    public static class Range {
+        private String module;
+        private long address;
+        private long length;
+
+        public String getModule() {
+            return module;
+        }
+
+        public long getAddress() {
+            return address;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public Range(String module, long address, long length) {
+            this.module = module;
+            this.address = address;
+            this.length = length;
+        }
+
+        public boolean contains(String module, long address, long length) {
+            return this.module.equals(module) && address >= this.address
+                    && address + length <= this.address + this.length;
+        }
+
+        /**
+         * Parses <tt>module:start-end</tt> or <tt>module:start+length</tt>,
+         * numbers in decimal or hexadecimal with <tt>0x</tt> prefix.
+         */
+        public static Range parse(String text) throws SessionException {
+            String[] parts = text.trim().split(":", 2);
+            if (parts.length != 2 || parts[0].isEmpty())
+                throw new SessionException("invalid memory range '" + text + "'");
+
+            try {
+                String spec = parts[1].trim();
+                int sep = Math.max(spec.indexOf('-'), spec.indexOf('+'));
+                if (sep < 0)
+                    throw new SessionException("invalid memory range '" + text + "'");
+
+                long start = Long.decode(spec.substring(0, sep).trim());
+                long value = Long.decode(spec.substring(sep + 1).trim());
+                long length = spec.charAt(sep) == '+' ? value : value - start;
+                if (start < 0 || length <= 0)
+                    throw new SessionException("invalid memory range '" + text + "'");
+                return new Range(parts[0].trim(), start, length);
+            } catch (NumberFormatException e) {
+                throw new SessionException("invalid memory range '" + text + "'");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:0x%x+0x%x", module, address, length);
+        }
+    }
+
+    // Sequential writer, the index is kept in memory and written last.
+    private static class Writer implements AutoCloseable {
+        private RandomAccessFile file;
+        private DataOutputStream out;
+        private long position = HEADER_SIZE;
+
+        private List<long[]> index = new ArrayList<long[]>();
+        private List<String> indexKeys = new ArrayList<String>();
+        private List<Object[]> ranges = new ArrayList<Object[]>();
+
+        public Writer(Path path) throws IOException {
+            file = new RandomAccessFile(path.toFile(), "rw");
+            file.setLength(0);
+            file.seek(HEADER_SIZE);
+            out = new DataOutputStream(new BufferedOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    file.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    file.write(b, off, len);
+                }
+            }, 1 << 16));
+        }
+
+        public void put(String key, String reply) throws IOException {
+            byte[] k = key.getBytes(StandardCharsets.UTF_8);
+            byte[] v = reply.getBytes(StandardCharsets.UTF_8);
+            index.add(new long[] { key.hashCode(), k.length, v.length, position });
+            indexKeys.add(key);
+            out.write(k);
+            out.write(v);
+            position += k.length + v.length;
+        }
+
+        /**
+         * Starts a memory range, its contents follow through writeMemory.
+         */
+        public void beginMemory(String module, long address, long length) throws IOException {
+            if (position + length > Integer.MAX_VALUE)
+                throw new IOException("Snapshot cannot hold " + length + " more bytes of memory");
+            ranges.add(new Object[] { module, address, length, position });
+        }
+
+        public void writeMemory(byte[] data, int length) throws IOException {
+            out.write(data, 0, length);
+            position += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Sort by hash, ties by key, so that lookups can binary search.
+            Integer[] order = new Integer[index.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> {
+                int cmp = Long.compare(index.get(a)[0], index.get(b)[0]);
+                return cmp != 0 ? cmp : indexKeys.get(a).compareTo(indexKeys.get(b));
+            });
+
+            long indexOffset = position;
+            for (Integer i : order) {
+                long[] entry = index.get(i);
+                out.writeInt((int) entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeInt((int) entry[2]);
+                out.writeLong(entry[3]);
+            }
+
+            long rangeOffset = indexOffset + (long) order.length * INDEX_ENTRY_SIZE;
+            if (rangeOffset > Integer.MAX_VALUE)
+                throw new IOException("Snapshot exceeds 2 GiB");
+            for (Object[] range : ranges) {
+                out.writeUTF((String) range[0]);
+                out.writeLong((Long) range[1]);
+                out.writeLong((Long) range[2]);
+                out.writeLong((Long) range[3]);
+            }
+
+            out.flush();
+            file.seek(0);
+            file.write(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(order.length);
+            file.writeLong(indexOffset);
+            file.writeInt(ranges.size());
+            file.writeLong(rangeOffset);
+            file.close();
+        }
+    }
+
+    private Path path;
+
+    private volatile MappedByteBuffer buffer;
+
+    private int numEntries;
+
+    private int indexOffset;
+
+    private Range[] ranges;
+
+    private long[] rangeOffsets;
+
+    private static byte[] read(ByteBuffer buffer, long offset, int length) {
+        byte[] data = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        view.get(data);
+        return data;
+    }
+
+    /**
+     * Maps a snapshot file. Only the header and the memory range table are
+     * decoded here, everything else is read on demand.
+     */
+    public SessionSnapshot(Path path) throws SessionException {
+        this.path = path;
+        open();
+
+        MappedByteBuffer buffer = this.buffer;
+        if (!Arrays.equals(read(buffer, 0, MAGIC.length), MAGIC))
+            throw new SessionException("Not a session snapshot: " + path);
+        if (buffer.getInt(8) != VERSION)
+            throw new SessionException("Unsupported snapshot version " + buffer.getInt(8));
+
+        numEntries = buffer.getInt(12);
+        indexOffset = (int) buffer.getLong(16);
+        int numRanges = buffer.getInt(24);
+
+        ByteBuffer table = buffer.duplicate();
+        table.position((int) buffer.getLong(28));
+        ranges = new Range[numRanges];
+        rangeOffsets = new long[numRanges];
+        for (int i = 0; i < numRanges; i++) {
+            byte[] name = new byte[table.getShort() & 0xffff];
+            table.get(name);
+            ranges[i] = new Range(new String(name, StandardCharsets.UTF_8), table.getLong(), table.getLong());
+            rangeOffsets[i] = table.getLong();
+        }
+    }
+
+    /**
+     * Maps the file again after {@link #close()}, does nothing while mapped.
+     */
+    public synchronized void open() throws SessionException {
+        if (buffer != null)
+            return;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new SessionException("Snapshot " + path + " is too large");
+            if (channel.size() < HEADER_SIZE)
+                throw new SessionException("Not a session snapshot: " + path);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new SessionException("Failed to open snapshot " + path, e);
+        }
+    }
+
+    /**
+     * Drops the mapping, which is released once no reader uses it anymore.
+     * Nothing can be looked up until the snapshot is opened again.
+     */
+    public synchronized void close() {
+        buffer = null;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    public Range[] getRanges() {
+        return ranges.clone();
+    }
+
+    /**
+     * Returns the recorded reply to a request or <tt>null</tt> if the request
+     * was not captured.
+     * @param key   Request as sent on the wire, e.g. <tt>a,sys.cpu.pc,</tt>
+     */
+    public String lookup(String key) {
+        MappedByteBuffer buffer = this.buffer;
+        if (buffer == null)
+            return null;
+
+        int hash = key.hashCode();
+        int lo = 0;
+        int hi = numEntries - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int h = buffer.getInt(indexOffset + mid * INDEX_ENTRY_SIZE);
+            if (h < hash)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+
+        byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = lo; i < numEntries; i++) {
+            int entry = indexOffset + i * INDEX_ENTRY_SIZE;
+            if (buffer.getInt(entry) != hash)
+                break;
+
+            int keyLength = buffer.getInt(entry + 4);
+            int replyLength = buffer.getInt(entry + 8);
+            long offset = buffer.getLong(entry + 12);
+            if (keyLength == wanted.length && Arrays.equals(read(buffer, offset, keyLength), wanted))
+                return new String(read(buffer, offset + keyLength, replyLength), StandardCharsets.UTF_8);
+        }
+
+        return null;
+    }
+
+    /**
+     * Copies captured memory or returns <tt>null</tt> if the requested range
+     * is not entirely part of one captured range.
+     */
+    public byte[] readMemory(String module, long address, int length) {
+        MappedByteBuffer buffer = this.buffer;
+        if (buffer == null)
+            return null;
+
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i].contains(module, address, length))
+                return read(buffer, rangeOffsets[i] + (address - ranges[i].getAddress()), length);
+        }
+
+        return null;
+    }
+
+    // Runs a batch, records all replies and returns them for inspection.
+    private static String[] capture(RemoteSerialProtocol protocol, Writer writer, List<String> requests)
+            throws SessionException, IOException {
+        String[] replies = protocol.exchange(requests.toArray(new String[requests.size()]));
+        for (int i = 0; i < replies.length; i++)
+            writer.put(requests.get(i), replies[i]);
+        return replies;
+    }
+
+    /**
+     * Captures a halted session into a snapshot file. The hierarchy is walked
+     * one level at a time, so every level, its attributes and its symbol lists
+     * each cost a single burst of requests.
+     */
+    static void write(Session session, RemoteSerialProtocol protocol, Path path, Range... memory)
+            throws SessionException {
+        long total = 0;
+        for (Range range : memory)
+            total += range.getLength();
+        if (total > Integer.MAX_VALUE - HEADER_SIZE)
+            throw new SessionException("Memory ranges exceed the 2 GiB snapshot limit");
+
+        Path temp = path.resolveSibling(path.getFileName() + ".part");
+        try (Writer writer = new Writer(temp)) {
+            writer.put(META_URI, session.getURI());
+            writer.put(META_USER, session.getUser());
+            writer.put(META_EXEC, session.getExecutable());
+            writer.put(META_CREATED, Long.toString(System.currentTimeMillis()));
+
+            capture(protocol, writer, Arrays.asList(RemoteSerialProtocol.join(RemoteSerialProtocol.VERS),
+                    RemoteSerialProtocol.join(RemoteSerialProtocol.TIME),
+                    RemoteSerialProtocol.join(RemoteSerialProtocol.DCYC),
+                    RemoteSerialProtocol.join(RemoteSerialProtocol.RDGQ)));
+
+            List<String> level = new ArrayList<String>();
+            level.add("");
+            while (!level.isEmpty()) {
+                List<String> requests = new ArrayList<String>();
+                for (String name : level)
+                    requests.add(name.isEmpty() ? RemoteSerialProtocol.join(RemoteSerialProtocol.INFO)
+                            : RemoteSerialProtocol.join(RemoteSerialProtocol.INFO, name));
+
+                String[] replies = capture(protocol, writer, requests);
+                List<String> next = new ArrayList<String>();
+                List<String> reads = new ArrayList<String>();
+                for (int i = 0; i < replies.length; i++) {
+                    Response info;
+                    try {
+                        info = new Response(requests.get(i), replies[i]);
+                    } catch (SessionException e) {
+                        continue; // recorded as is
+                    }
+
+                    String name = level.get(i);
+                    for (String child : info.getValues("child"))
+                        next.add(name.isEmpty() ? child : name + "." + child);
+                    for (String attr : info.getValues("attr"))
+                        reads.add(RemoteSerialProtocol.join(RemoteSerialProtocol.GETA, attr));
+                    for (String cmd : info.getValues("cmd"))
+                        if (cmd.startsWith("lsym:0:"))
+                            reads.add(RemoteSerialProtocol.join(RemoteSerialProtocol.EXEC, name, "lsym"));
+                }
+
+                capture(protocol, writer, reads);
+                level = next;
+            }
+
+            // Streamed a burst at a time like MemoryTransfer.dump, so only one
+            // chunk is held in memory regardless of the range size.
+            byte[] data = new byte[MemoryTransfer.CHUNK_SIZE];
+            for (Range range : memory) {
+                writer.beginMemory(range.getModule(), range.getAddress(), range.getLength());
+                long end = range.getAddress() + range.getLength();
+                long address = range.getAddress();
+                while (address < end) {
+                    String[] requests = MemoryTransfer.requests(range.getModule(), address, end);
+                    String[] replies = protocol.exchange(requests);
+                    for (int i = 0; i < replies.length; i++) {
+                        int expected = (int) Math.min(MemoryTransfer.CHUNK_SIZE, end - address);
+                        int got = MemoryCache.parse(new Response(requests[i], replies[i]).toString(), data, 0);
+                        if (got != expected)
+                            throw new SessionException("Failed to read memory " + range);
+                        writer.writeMemory(data, got);
+                        address += got;
+                    }
+                }
+            }
+        } catch (IOException | SessionException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ex) {
+                // keep the original error
+            }
+
+            if (e instanceof SessionException)
+                throw (SessionException) e;
+            throw new SessionException("Failed to write snapshot " + path, e);
+        }
+
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new SessionException("Failed to write snapshot " + path, e);
+        }
+    }
+
+}
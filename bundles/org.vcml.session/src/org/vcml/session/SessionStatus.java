@@ -0,0 +1,117 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+/**
+ * Snapshot of a session taken after a controller operation finished.
+ */
+public class SessionStatus {
+
+    private Session session;
+
+    private String operation;
+
+    private boolean connected;
+
+    private boolean running;
+
+    private double time;
+
+    private int deltaCycle;
+
+    private String output;
+
+    private String error;
+
+    private long duration;
+
+    public SessionStatus(Session session, String operation, String output, String error, long duration) {
+        this.session = session;
+        this.operation = operation;
+        this.connected = session.isConnected();
+        this.running = session.isRunning();
+        this.time = session.getTime();
+        this.deltaCycle = session.getDeltaCycle();
+        this.output = output;
+        this.error = error;
+        this.duration = duration;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public int getDeltaCycle() {
+        return deltaCycle;
+    }
+
+    /**
+     * Returns the output of a module command or <tt>null</tt>.
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the error message if the operation failed, <tt>null</tt> otherwise.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean hasFailed() {
+        return error != null;
+    }
+
+    /**
+     * Returns how long the operation took in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public String getState() {
+        if (running)
+            return "running";
+        return connected ? "connected" : "not connected";
+    }
+
+    @Override
+    public String toString() {
+        String result = error != null ? "failed: " + error : "ok";
+        return String.format("%s: %s %s, %s at %.9fs", session, operation, result, getState(), time);
+    }
+
+}
@@ -0,0 +1,65 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+public class SimulationTime {
+
+    private static final String[] UNITS = { "s", "ms", "us", "ns", "ps" };
+
+    private SimulationTime() {
+        // static helpers only
+    }
+
+    /**
+     * Formats a time in seconds using the largest unit that keeps it >= 1.
+     */
+    public static String format(double seconds) {
+        double value = seconds;
+        for (String unit : UNITS) {
+            if (Math.abs(value) >= 1.0 || unit.equals("ps"))
+                return String.format("%.6g%s", value, unit).replaceFirst("\\.?0+(?=[a-z])", "");
+            value *= 1000.0;
+        }
+
+        return Double.toString(seconds);
+    }
+
+    /**
+     * Parses a time such as "10us" or "0.5 ms"; plain numbers are seconds.
+     * @return  time in seconds or NaN if the text cannot be parsed
+     */
+    public static double parse(String text) {
+        String str = text.trim();
+        double divisor = 1.0;
+        for (int i = UNITS.length - 1; i >= 0; i--) {
+            if (str.endsWith(UNITS[i])) {
+                str = str.substring(0, str.length() - UNITS[i].length()).trim();
+                divisor = Math.pow(1000.0, i);
+                break;
+            }
+        }
+
+        try {
+            return Double.parseDouble(str) / divisor;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+/**
+ * Answers requests of an offline session from a {@link SessionSnapshot}.
+ * Requests that were not captured or would change the simulation are
+ * answered with an error, memory reads are served from captured ranges.
+ */
+class SnapshotProtocol extends RemoteSerialProtocol {
+
+    public static final String ERROR_READ_ONLY = "ERROR,session snapshot is read-only";
+
+    public static final String ERROR_NOT_CAPTURED = "ERROR,not part of the snapshot";
+
+    private SessionSnapshot snapshot;
+
+    public SnapshotProtocol(SessionSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    private String readMemory(String request) {
+        String[] args = request.split(",");
+        if (args.length != 5 || !args[0].equals(EXEC) || !args[2].equals("show"))
+            return null;
+
+        try {
+            long start = Long.parseLong(args[3]);
+            long end = Long.parseLong(args[4]);
+            if (end <= start || end - start > Integer.MAX_VALUE)
+                return null;
+
+            byte[] data = snapshot.readMemory(args[1], start, (int) (end - start));
+            return data == null ? null : "OK," + MemoryCache.format(start, data);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String reply(String request) {
+        String reply = snapshot.lookup(request);
+        if (reply == null)
+            reply = readMemory(request);
+        if (reply != null)
+            return reply;
+
+        String code = request.substring(0, Math.max(request.indexOf(','), 0));
+        switch (code) {
+        case STEP:
+        case CONT:
+        case SETA:
+        case WRGQ:
+        case QUIT:
+            return ERROR_READ_ONLY;
+        default:
+            return ERROR_NOT_CAPTURED;
+        }
+    }
+
+    @Override
+    public void setTimeout(int ms) {
+        // nothing to wait for
+    }
+
+    @Override
+    public synchronized void send_char(int val) throws SessionException {
+        throw new SessionException("Session snapshot is read-only");
+    }
+
+    @Override
+    public synchronized void send(String message) throws SessionException {
+        throw new SessionException("Session snapshot is read-only");
+    }
+
+    @Override
+    public synchronized String recv() throws SessionException {
+        throw new SessionException("Session snapshot is read-only");
+    }
+
+    @Override
+    public synchronized Response command(String... args) throws SessionException {
+        String request = join(args);
+        return new Response(request, reply(request));
+    }
+
+    @Override
+    synchronized String[] exchange(String[] requests) throws SessionException {
+        String[] replies = new String[requests.length];
+        for (int i = 0; i < requests.length; i++)
+            replies[i] = reply(requests[i]);
+        return replies;
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released with the snapshot
+    }
+
+}
@@ -0,0 +1,253 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Derives simulation speed from the samples of a session monitor: the ratio
+ * of simulated time to wall-clock time and the MIPS of each processor whose
+ * instruction (or cycle) counter is sampled. Keeps a bounded history.
+ */
+public class SpeedMeter {
+
+    public static final int DEFAULT_HISTORY = 600;
+
+    public static final String[] COUNTER_NAMES = { "instructions", "cycles" };
+
+    private int capacity;
+
+    private int size = 0;
+
+    private int head = 0;
+
+    private double[] walls;
+
+    private double[] times;
+
+    private double[] ratios;
+
+    private double[][] mips;
+
+    private String[] counters;
+
+    private TimeSampleBuffer source = null;
+
+    private long next = 0;
+
+    private long startWall = 0;
+
+    private TimeSample last = new TimeSample();
+
+    private TimeSample current = new TimeSample();
+
+    private boolean hasLast = false;
+
+    public SpeedMeter(String[] counters, int capacity) {
+        this.counters = counters.clone();
+        this.capacity = Math.max(2, capacity);
+        walls = new double[this.capacity];
+        times = new double[this.capacity];
+        ratios = new double[this.capacity];
+        mips = new double[counters.length][this.capacity];
+    }
+
+    /**
+     * Returns the names of the counter attributes, one per MIPS series.
+     */
+    public String[] getCounters() {
+        return counters.clone();
+    }
+
+    public int getNumCounters() {
+        return counters.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int slot(int index) {
+        return (head + capacity - size + index) % capacity;
+    }
+
+    /**
+     * Returns wall-clock seconds since the first sample of the history.
+     * @param index Index into the history, zero being the oldest point
+     */
+    public double getWallTime(int index) {
+        return walls[slot(index)];
+    }
+
+    public double getSimTime(int index) {
+        return times[slot(index)];
+    }
+
+    /**
+     * Returns simulated seconds per wall-clock second.
+     */
+    public double getRatio(int index) {
+        return ratios[slot(index)];
+    }
+
+    /**
+     * Returns million instructions per wall-clock second of a processor.
+     * @param counter   Index of the counter attribute
+     * @param index     Index into the history, zero being the oldest point
+     */
+    public double getMIPS(int counter, int index) {
+        return mips[counter][slot(index)];
+    }
+
+    public void clear() {
+        size = 0;
+        head = 0;
+        hasLast = false;
+        startWall = 0;
+    }
+
+    private boolean append(TimeSample prev, TimeSample curr) {
+        double dwall = (curr.getWallTime() - prev.getWallTime()) / 1e9;
+        if (dwall <= 0.0)
+            return false;
+
+        if (size == 0)
+            startWall = prev.getWallTime();
+
+        walls[head] = (curr.getWallTime() - startWall) / 1e9;
+        times[head] = curr.getTime();
+        ratios[head] = (curr.getTime() - prev.getTime()) / dwall;
+        for (int i = 0; i < mips.length; i++) {
+            long delta = i < curr.getNumCounters() && i < prev.getNumCounters()
+                    ? curr.getCounter(i) - prev.getCounter(i)
+                    : 0;
+            mips[i][head] = Math.max(0, delta) / dwall / 1e6;
+        }
+
+        head = (head + 1) % capacity;
+        if (size < capacity)
+            size++;
+        return true;
+    }
+
+    /**
+     * Consumes samples added to a buffer since the last call. Samples the
+     * monitor has already overwritten are skipped.
+     * @param buffer    Sample buffer of a session monitor
+     * @return          Number of points added to the history
+     */
+    public int update(TimeSampleBuffer buffer) {
+        if (buffer != source) {
+            source = buffer;
+            next = 0;
+            hasLast = false;
+        }
+
+        long count = buffer.getCount();
+        if (count < next) { // buffer was cleared, simulation restarted
+            next = 0;
+            hasLast = false;
+        }
+
+        if (count - next > buffer.getCapacity())
+            next = count - buffer.getCapacity();
+
+        int added = 0;
+        for (; next < count; next++) {
+            if (!buffer.get(next, current)) {
+                hasLast = false;
+                continue;
+            }
+
+            if (hasLast && append(last, current))
+                added++;
+
+            last.set(current);
+            hasLast = true;
+        }
+
+        return added;
+    }
+
+    /**
+     * Writes the history as comma separated values, oldest point first.
+     */
+    public void exportCSV(Writer writer) throws IOException {
+        StringBuilder header = new StringBuilder("wall_time_s,sim_time_s,sim_wall_ratio");
+        for (String counter : counters)
+            header.append(',').append(counter).append("_mips");
+        writer.write(header.toString());
+        writer.write(System.lineSeparator());
+
+        for (int i = 0; i < size; i++) {
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("%.6f,%.9f,%.6f", getWallTime(i), getSimTime(i), getRatio(i)));
+            for (int c = 0; c < counters.length; c++)
+                line.append(String.format(",%.3f", getMIPS(c, i)));
+            writer.write(line.toString());
+            writer.write(System.lineSeparator());
+        }
+
+        writer.flush();
+    }
+
+    private static String findCounter(Module module) {
+        for (String name : COUNTER_NAMES) {
+            for (Attribute attr : module.getAttributes()) {
+                if (attr.isEditable() && attr.getBaseName().equals(name))
+                    return attr.getName();
+            }
+        }
+
+        return null;
+    }
+
+    private static void findCounters(Module module, List<String> result) {
+        if (Module.KIND_VCML_PROCESSOR.equals(module.getKind())) {
+            String counter = findCounter(module);
+            if (counter != null)
+                result.add(counter);
+        }
+
+        for (Module child : module.getChildren())
+            findCounters(child, result);
+    }
+
+    /**
+     * Collects the instruction counter of every processor in a hierarchy,
+     * falling back to the cycle counter if a processor has no instruction
+     * counter.
+     * @param roots Top level modules of a session
+     * @return      Full hierarchical names of the counter attributes
+     */
+    public static String[] findCounters(Module[] roots) {
+        List<String> result = new ArrayList<String>();
+        for (Module root : roots)
+            findCounters(root, result);
+        return result.toArray(new String[result.size()]);
+    }
+
+}
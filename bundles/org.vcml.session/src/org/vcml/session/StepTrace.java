@@ -0,0 +1,150 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.Arrays;
+
+/**
+ * Compact record of attribute values sampled after each step of a multi-step
+ * run, indexed by simulation time. Values are kept as longs unless an
+ * attribute turns out to be non-numeric, in which case only that column
+ * falls back to strings.
+ */
+public class StepTrace {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] names;
+
+    private int size = 0;
+
+    private double[] times = new double[INITIAL_CAPACITY];
+
+    private long[][] numbers;
+
+    private String[][] texts;
+
+    public StepTrace(String... names) {
+        this.names = names.clone();
+        this.numbers = new long[names.length][INITIAL_CAPACITY];
+        this.texts = new String[names.length][];
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Returns a sampled value.
+     * @param index     Index of the sample, i.e. the step
+     * @param column    Index of the attribute in {@link #getNames()}
+     * @return          The value or <tt>null</tt> if it could not be read
+     */
+    public String getValue(int index, int column) {
+        if (texts[column] != null)
+            return texts[column][index];
+        return Long.toString(numbers[column][index]);
+    }
+
+    /**
+     * Returns whether all values of an attribute were numeric, in which case
+     * {@link #getNumber(int, int)} can be used to read them.
+     */
+    public boolean isNumeric(int column) {
+        return texts[column] == null;
+    }
+
+    public long getNumber(int index, int column) {
+        return numbers[column][index];
+    }
+
+    /**
+     * Returns the index of the first sample taken at or after a given time.
+     * @param time  Simulation time in seconds
+     * @return      Sample index or {@link #size()} if all are earlier
+     */
+    public int findIndex(double time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        return lo;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        for (int i = 0; i < names.length; i++) {
+            numbers[i] = Arrays.copyOf(numbers[i], capacity);
+            if (texts[i] != null)
+                texts[i] = Arrays.copyOf(texts[i], capacity);
+        }
+    }
+
+    private void toText(int column) {
+        texts[column] = new String[times.length];
+        for (int i = 0; i < size; i++)
+            texts[column][i] = Long.toString(numbers[column][i]);
+    }
+
+    void add(double time, String[] values) {
+        if (size == times.length)
+            grow();
+
+        times[size] = time;
+        for (int i = 0; i < names.length; i++) {
+            String value = values[i];
+            if (texts[i] == null) {
+                try {
+                    numbers[i][size] = Long.parseLong(value);
+                    continue;
+                } catch (NumberFormatException e) {
+                    toText(i);
+                }
+            }
+
+            texts[i][size] = value;
+        }
+
+        size++;
+    }
+
+}
@@ -0,0 +1,72 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+public class TimeSample {
+
+    public double time = Double.NaN;
+
+    public long deltaCycle = -1;
+
+    public long wallTime = 0;
+
+    public long[] counters = new long[0];
+
+    public double getTime() {
+        return time;
+    }
+
+    public long getDeltaCycle() {
+        return deltaCycle;
+    }
+
+    /**
+     * Host time at which the sample was taken, as reported by System.nanoTime().
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * Returns the value of an attribute counter sampled along with the time.
+     * @param index Index of the counter as configured in the monitor
+     */
+    public long getCounter(int index) {
+        return counters[index];
+    }
+
+    public int getNumCounters() {
+        return counters.length;
+    }
+
+    public void set(TimeSample other) {
+        time = other.time;
+        deltaCycle = other.deltaCycle;
+        wallTime = other.wallTime;
+        if (counters.length != other.counters.length)
+            counters = new long[other.counters.length];
+        System.arraycopy(other.counters, 0, counters, 0, counters.length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.9fs/%d", time, deltaCycle);
+    }
+
+}
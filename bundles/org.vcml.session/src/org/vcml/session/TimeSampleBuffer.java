@@ -0,0 +1,152 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring of time samples for one writer and any number of readers.
+ * Neither side takes a lock: readers detect samples that have been
+ * overwritten while they were copying them and report them as unavailable.
+ * Each slot carries the index of the sample it holds, which the writer
+ * clears before and sets after filling the slot. All slot data is accessed
+ * through atomic arrays, so a reader's check of that index cannot be
+ * reordered before its reads of the data.
+ */
+public class TimeSampleBuffer {
+
+    private final int mask;
+
+    // Index of the sample held by each slot, or -1 while it is written.
+    private final AtomicLongArray stamps;
+
+    private final AtomicLongArray times; // raw double bits
+
+    private final AtomicLongArray cycles;
+
+    private final AtomicLongArray walls;
+
+    private final int numCounters;
+
+    private final AtomicLongArray counters;
+
+    // Number of samples written so far, published after the slot is filled.
+    private final AtomicLong count = new AtomicLong();
+
+    public TimeSampleBuffer(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * Creates a ring that records additional counter values with each sample.
+     * @param capacity      Minimum number of samples kept
+     * @param numCounters   Number of counter values per sample
+     */
+    public TimeSampleBuffer(int capacity, int numCounters) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        stamps = new AtomicLongArray(size);
+        times = new AtomicLongArray(size);
+        cycles = new AtomicLongArray(size);
+        walls = new AtomicLongArray(size);
+        this.numCounters = numCounters;
+        this.counters = new AtomicLongArray(size * numCounters);
+        for (int i = 0; i < size; i++)
+            stamps.set(i, -1);
+    }
+
+    public int getNumCounters() {
+        return numCounters;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of samples ever added, i.e. the index of the next one.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Adds a sample. Must only be called from a single thread at a time.
+     */
+    public void add(double time, long deltaCycle, long wallTime) {
+        add(time, deltaCycle, wallTime, null);
+    }
+
+    /**
+     * Adds a sample with counter values. Must only be called from a single
+     * thread at a time.
+     * @param values    Counter values, missing ones are recorded as zero
+     */
+    public void add(double time, long deltaCycle, long wallTime, long[] values) {
+        long index = count.get();
+        int slot = (int) (index & mask);
+        stamps.set(slot, -1); // before any of the data below
+        times.lazySet(slot, Double.doubleToRawLongBits(time));
+        cycles.lazySet(slot, deltaCycle);
+        walls.lazySet(slot, wallTime);
+        for (int i = 0; i < numCounters; i++)
+            counters.lazySet(slot * numCounters + i, (values != null && i < values.length) ? values[i] : 0);
+        stamps.lazySet(slot, index);
+        count.lazySet(index + 1);
+    }
+
+    public void clear() {
+        count.set(0);
+    }
+
+    /**
+     * Copies a sample into <tt>sample</tt>.
+     * @param index     Index of the sample, counting from the first one added
+     * @param sample    Receives the sample data
+     * @return          <tt>false</tt> if the sample has not been added yet or
+     *                  has already been overwritten
+     */
+    public boolean get(long index, TimeSample sample) {
+        if (index < 0 || index >= count.get())
+            return false;
+
+        int slot = (int) (index & mask);
+        double time = Double.longBitsToDouble(times.get(slot));
+        long cycle = cycles.get(slot);
+        long wall = walls.get(slot);
+        if (sample.counters.length != numCounters)
+            sample.counters = new long[numCounters];
+        for (int i = 0; i < numCounters; i++)
+            sample.counters[i] = counters.get(slot * numCounters + i);
+
+        if (stamps.get(slot) != index)
+            return false; // writer has wrapped around while we were reading
+
+        sample.time = time;
+        sample.deltaCycle = cycle;
+        sample.wallTime = wall;
+        return true;
+    }
+
+    public boolean getLatest(TimeSample sample) {
+        return get(count.get() - 1, sample);
+    }
+
+}
@@ -0,0 +1,152 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class WatchList {
+
+    private class Entry {
+        public String name;
+        public String text = null;
+        public long number = 0;
+        public boolean numeric = false;
+
+        public Entry(String name) {
+            this.name = name;
+        }
+
+        // Returns true if the new value differs from the cached one.
+        public boolean update(String value) {
+            long parsed = 0;
+            boolean isNumber = true;
+            try {
+                parsed = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                isNumber = false;
+            }
+
+            boolean changed;
+            if (text == null)
+                changed = true;
+            else if (isNumber && numeric)
+                changed = parsed != number;
+            else
+                changed = isNumber != numeric || !value.equals(text);
+
+            if (changed) {
+                text = value;
+                number = parsed;
+                numeric = isNumber;
+            }
+
+            return changed;
+        }
+    }
+
+    private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    private List<AttributeChange> changes = Collections.emptyList();
+
+    public synchronized void add(String name) {
+        if (!entries.containsKey(name))
+            entries.put(name, new Entry(name));
+    }
+
+    public synchronized void remove(String name) {
+        entries.remove(name);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        changes = Collections.emptyList();
+    }
+
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized String[] getNames() {
+        return entries.keySet().toArray(new String[entries.size()]);
+    }
+
+    /**
+     * Returns the value of a watched attribute as of the last update.
+     * @param name  Full hierarchical name of the attribute
+     * @return      Last value read or <tt>null</tt> if not yet read
+     */
+    public synchronized String getValue(String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.text : null;
+    }
+
+    /**
+     * Returns the attributes whose value changed during the last update.
+     * @return  an unmodifiable list, empty if nothing changed
+     */
+    public synchronized List<AttributeChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Appends one GETA request per watched attribute to a command batch.
+     * @param batch Command batch to be sent to the session
+     * @return      Names in the order their requests were appended
+     */
+    synchronized String[] appendRequests(List<String[]> batch) {
+        String[] names = getNames();
+        for (String name : names)
+            batch.add(new String[] { RemoteSerialProtocol.GETA, name });
+        return names;
+    }
+
+    /**
+     * Compares the replies to the requests issued by {@link #appendRequests}
+     * against the cached values and records which attributes have changed.
+     */
+    synchronized List<AttributeChange> update(String[] names, Response[] responses, int offset) {
+        List<AttributeChange> list = new ArrayList<AttributeChange>();
+        for (int i = 0; i < names.length; i++) {
+            Entry entry = entries.get(names[i]);
+            Response resp = responses[offset + i];
+            if (entry == null || resp == null)
+                continue;
+
+            String[] value = resp.getValues("value");
+            if (value.length == 0)
+                continue;
+
+            String old = entry.text;
+            if (entry.update(value[0]))
+                list.add(new AttributeChange(entry.name, old, entry.text));
+        }
+
+        changes = Collections.unmodifiableList(list);
+        return changes;
+    }
+
+}
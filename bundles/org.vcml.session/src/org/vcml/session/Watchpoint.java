@@ -0,0 +1,155 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Watches memory ranges for changes while stepping. The protocol has no
+ * watchpoints, so the ranges are read back after every step as part of the
+ * same pipelined burst as the steps. Memories that offer a <tt>hash</tt>
+ * command return one short hash per page, others the page contents. A reply
+ * that differs from the one read before the run marks the change.
+ * <p>
+ * Reading only once per chunk would be cheaper, but a simulation cannot be
+ * rewound, so a chunk that saw a change could not be narrowed down to the
+ * step that made it afterwards. For memories without <tt>hash</tt> every
+ * step therefore costs a transfer of the watched bytes, which is why the
+ * pieces are clipped to the watched ranges rather than whole pages.
+ */
+public class Watchpoint {
+
+    public static final int PIECE_SIZE = MemoryCache.PAGE_SIZE;
+
+    private final SessionSnapshot.Range[] ranges;
+
+    // One read per page of every range, rebuilt at the start of each run.
+    private final List<SessionSnapshot.Range> pieces = new ArrayList<SessionSnapshot.Range>();
+
+    private String[] requests = new String[0];
+
+    private String[] baseline = new String[0];
+
+    private boolean[] hashed = new boolean[0];
+
+    public Watchpoint(SessionSnapshot.Range... ranges) {
+        if (ranges.length == 0)
+            throw new IllegalArgumentException("no range to watch");
+        this.ranges = ranges.clone();
+    }
+
+    public SessionSnapshot.Range[] getRanges() {
+        return ranges.clone();
+    }
+
+    /**
+     * Returns the read requests to append after each step.
+     */
+    String[] getRequests() {
+        return requests;
+    }
+
+    /**
+     * Builds the read requests and reads the contents to compare against.
+     */
+    void prepare(Session session, RemoteSerialProtocol protocol) throws SessionException {
+        pieces.clear();
+        List<Boolean> hashing = new ArrayList<Boolean>();
+        for (SessionSnapshot.Range range : ranges) {
+            boolean hash = session.getMemoryCache().supportsHash(protocol, range.getModule());
+            for (long offset = 0; offset < range.getLength(); offset += PIECE_SIZE) {
+                long length = Math.min(PIECE_SIZE, range.getLength() - offset);
+                pieces.add(new SessionSnapshot.Range(range.getModule(), range.getAddress() + offset, length));
+                hashing.add(hash);
+            }
+        }
+
+        requests = new String[pieces.size()];
+        hashed = new boolean[pieces.size()];
+        for (int i = 0; i < requests.length; i++) {
+            SessionSnapshot.Range piece = pieces.get(i);
+            hashed[i] = hashing.get(i);
+            String command = hashed[i] ? MemoryCache.CMD_HASH : MemoryCache.CMD_SHOW;
+            requests[i] = RemoteSerialProtocol.join(
+                    MemoryCache.request(piece.getModule(), command, piece.getAddress(), piece.getLength()));
+        }
+
+        baseline = protocol.exchange(requests);
+        for (int i = 0; i < baseline.length; i++)
+            check(i, baseline[i]);
+    }
+
+    private void check(int index, String reply) throws SessionException {
+        if (reply.isEmpty() || reply.startsWith("ERROR"))
+            throw new SessionException("Cannot read watched memory " + pieces.get(index));
+    }
+
+    /**
+     * Compares the replies to the reads of one step against the baseline.
+     * Identical contents give identical replies, so the raw replies are
+     * compared without decoding them.
+     * @return  Index of the first changed piece or -1
+     */
+    int compare(String[] replies, int offset) throws SessionException {
+        for (int i = 0; i < requests.length; i++) {
+            String reply = replies[offset + i];
+            if (reply.equals(baseline[i]))
+                continue;
+
+            check(i, reply);
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the address of the first changed byte of a piece, or the start
+     * of the piece if only its hash is known. Both replies list the same
+     * addresses, so the first differing character lies within the changed
+     * byte, which is found without decoding either reply.
+     */
+    long locate(int index, String reply) {
+        SessionSnapshot.Range piece = pieces.get(index);
+        if (hashed[index])
+            return piece.getAddress();
+
+        String before = baseline[index];
+        int length = Math.min(before.length(), reply.length());
+        int pos = 0;
+        while (pos < length && before.charAt(pos) == reply.charAt(pos))
+            pos++;
+
+        return piece.getAddress() + Math.max(0, MemoryCache.indexOf(reply, pos));
+    }
+
+    SessionSnapshot.Range getPiece(int index) {
+        return pieces.get(index);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (SessionSnapshot.Range range : ranges)
+            builder.append(builder.length() > 0 ? " " : "").append(range);
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,128 @@
+/******************************************************************************
+ *                                                                            *
+ * Copyright 2018 Jan Henrik Weinstock                                        *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *     http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ *                                                                            *
+ ******************************************************************************/
+
+package org.vcml.session;
+
+/**
+ * Outcome of running a simulation until watched memory changes.
+ */
+public class WatchpointResult {
+
+    private Watchpoint watchpoint;
+
+    private SessionSnapshot.Range range;
+
+    private boolean canceled;
+
+    private long address;
+
+    private long step;
+
+    private long steps;
+
+    private int roundTrips;
+
+    private double time;
+
+    public WatchpointResult(Watchpoint watchpoint, SessionSnapshot.Range range, boolean canceled, long address,
+            long step, long steps, int roundTrips, double time) {
+        this.watchpoint = watchpoint;
+        this.range = range;
+        this.canceled = canceled;
+        this.address = address;
+        this.step = step;
+        this.steps = steps;
+        this.roundTrips = roundTrips;
+        this.time = time;
+    }
+
+    public Watchpoint getWatchpoint() {
+        return watchpoint;
+    }
+
+    /**
+     * Returns <tt>false</tt> if the step limit was reached first.
+     */
+    public boolean isTriggered() {
+        return range != null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the run was canceled before memory changed.
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Returns the page sized part of a watched range that changed first or
+     * <tt>null</tt>.
+     */
+    public SessionSnapshot.Range getRange() {
+        return range;
+    }
+
+    /**
+     * Returns the first changed address, or the start of the changed range
+     * if the memory only reported a hash for it.
+     */
+    public long getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the step after which the change was first seen, counting from
+     * one.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the number of steps simulated, equal to the triggering step if
+     * the memory changed.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the number of request/reply round trips spent, taking the
+     * pipeline depth of the connection into account.
+     */
+    public int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * Returns the simulation time at which the run stopped.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        if (range == null)
+            return String.format("%s after %d steps at %s (%d round trips)",
+                    canceled ? "canceled" : "step limit reached", steps, SimulationTime.format(time), roundTrips);
+        return String.format("%s:0x%x changed in step %d at %s (%d round trips)", range.getModule(), address, step,
+                SimulationTime.format(time), roundTrips);
+    }
+
+}